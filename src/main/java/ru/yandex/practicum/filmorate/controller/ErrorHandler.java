@@ -17,7 +17,7 @@ public class ErrorHandler {
     @ExceptionHandler(EntityNotFoundException.class)
     @ResponseStatus(HttpStatus.NOT_FOUND)
     public ErrorResponse handleEntityNotFound(final RuntimeException exception) {
-        log.debug("Получен статус 404 Not found {}", exception.getMessage(), exception);
+        log.debug("Получен статус 404 Not found {}", exception.getMessage());
         return new ErrorResponse(exception.getMessage());
     }
 
@@ -1,16 +1,27 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
 import javax.validation.Valid;
+import javax.validation.Validator;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @Validated
@@ -20,10 +31,17 @@ import java.util.List;
 public class FilmController {
 
     private final FilmService filmService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final int batchChunkSize;
 
     @Autowired
-    public FilmController(FilmService filmService) {
+    public FilmController(FilmService filmService, ObjectMapper objectMapper, Validator validator,
+                          @Value("${filmorate.films.batch.chunk-size:1000}") int batchChunkSize) {
         this.filmService = filmService;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.batchChunkSize = batchChunkSize;
     }
 
     @PostMapping
@@ -32,6 +50,13 @@ public class FilmController {
         return filmService.addFilm(film);
     }
 
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public BatchResult addFilms(InputStream body) throws IOException {
+        log.debug("Получен запрос POST /films/batch");
+        return JsonBatches.process(objectMapper, validator, body, Film.class, batchChunkSize, filmService::addFilms,
+                Film::getId);
+    }
+
     @PutMapping
     public Film updateFilm(@Valid @RequestBody Film film) {
         log.debug("Получен запрос PUT /films");
@@ -39,9 +64,16 @@ public class FilmController {
     }
 
     @GetMapping
-    public List<Film> getFilms() {
-        log.debug("Получен запрос GET /films");
-        return filmService.getAllFilms();
+    public List<Film> getFilms(@RequestParam(required = false) Integer after,
+                               @Valid @Positive @RequestParam(defaultValue = "1000") Integer limit) {
+        log.debug("Получен запрос GET /films?after={after}&limit={limit}");
+        return filmService.getFilmsPage(after, limit);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamFilms() {
+        log.debug("Получен запрос GET /films (application/x-ndjson)");
+        return NdjsonStreams.stream(objectMapper, filmService::forEachFilm);
     }
 
     @GetMapping("/{id}")
@@ -56,6 +88,14 @@ public class FilmController {
         filmService.addLike(id, userId);
     }
 
+    @PutMapping(value = "/likes/batch", consumes = {MediaType.APPLICATION_JSON_VALUE,
+            MediaType.APPLICATION_NDJSON_VALUE})
+    public BatchResult addLikes(InputStream body) throws IOException {
+        log.debug("Получен запрос PUT /films/likes/batch");
+        return JsonBatches.process(objectMapper, validator, body, FilmLike.class, batchChunkSize,
+                filmService::addLikes, null);
+    }
+
     @DeleteMapping("/{id}/like/{userId}")
     public void removeLike(@PathVariable int id, @PathVariable Integer userId) {
         log.debug("Получен запрос DELETE /films/{id}/like/{userId}");
@@ -91,8 +131,10 @@ public class FilmController {
 
     @GetMapping("/search")
     public List<Film> getFilmsBySearch(@Valid @NotBlank @RequestParam("query") String query,
-                                       @RequestParam("by") String by) {
-        log.debug("Получен запрос GET /films/search");
-        return filmService.getFilmsBySearch(query, by);
+                                       @RequestParam("by") String by,
+                                       @Valid @PositiveOrZero @RequestParam(defaultValue = "0") Integer offset,
+                                       @Valid @Positive @RequestParam(defaultValue = "1000") Integer limit) {
+        log.debug("Получен запрос GET /films/search?query={query}&by={by}&offset={offset}&limit={limit}");
+        return filmService.getFilmsBySearch(query, by, offset, limit);
     }
 }
@@ -0,0 +1,106 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ru.yandex.practicum.filmorate.model.BatchError;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Пакетная обработка тела запроса: JSON-массива или потока application/x-ndjson. Элементы читаются
+ * по одному, каждый проверяется отдельно, корректные передаются обработчику частями по {@code chunkSize}.
+ * Ошибка разбора или проверки элемента не мешает обработке остальных и возвращается с его индексом.
+ */
+final class JsonBatches {
+
+    private JsonBatches() {
+    }
+
+    /**
+     * @param handler получает часть корректных элементов и возвращает ошибки для каждого из них
+     *                ({@code null}, если элемент обработан)
+     * @param idOf    ID обработанного элемента для ответа или {@code null}, если ID не возвращаются
+     */
+    static <T> BatchResult process(ObjectMapper objectMapper, Validator validator, InputStream body, Class<T> type,
+                                   int chunkSize, Function<List<T>, List<String>> handler,
+                                   ToIntFunction<T> idOf) throws IOException {
+        List<Integer> ids = idOf == null ? null : new ArrayList<>();
+        List<BatchError> errors = new ArrayList<>();
+        List<T> chunk = new ArrayList<>(chunkSize);
+        List<Integer> chunkIndexes = new ArrayList<>(chunkSize);
+        int count = 0;
+        try (MappingIterator<JsonNode> items = objectMapper.readerFor(JsonNode.class).readValues(body)) {
+            while (hasNext(items, count)) {
+                int index = count++;
+                if (ids != null) {
+                    ids.add(null);
+                }
+                T item;
+                try {
+                    item = objectMapper.treeToValue(items.nextValue(), type);
+                } catch (JsonProcessingException e) {
+                    errors.add(new BatchError(index, e.getOriginalMessage()));
+                    continue;
+                }
+                Set<ConstraintViolation<T>> violations = validator.validate(item);
+                if (!violations.isEmpty()) {
+                    errors.add(new BatchError(index, describe(violations)));
+                    continue;
+                }
+                chunk.add(item);
+                chunkIndexes.add(index);
+                if (chunk.size() == chunkSize) {
+                    flush(chunk, chunkIndexes, handler, idOf, ids, errors);
+                }
+            }
+        }
+        flush(chunk, chunkIndexes, handler, idOf, ids, errors);
+        errors.sort(Comparator.comparingInt(BatchError::getIndex));
+        return new BatchResult(count - errors.size(), errors.size(), ids, errors);
+    }
+
+    static String describe(Set<? extends ConstraintViolation<?>> violations) {
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+
+    private static boolean hasNext(MappingIterator<JsonNode> items, int index) {
+        try {
+            return items.hasNextValue();
+        } catch (IOException e) {
+            throw new ConstraintViolationException("Некорректный JSON после элемента " + (index - 1) + ": " +
+                    e.getMessage(), Collections.emptySet());
+        }
+    }
+
+    private static <T> void flush(List<T> chunk, List<Integer> chunkIndexes, Function<List<T>, List<String>> handler,
+                                  ToIntFunction<T> idOf, List<Integer> ids, List<BatchError> errors) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<String> chunkErrors = handler.apply(chunk);
+        for (int i = 0; i < chunk.size(); i++) {
+            int index = chunkIndexes.get(i);
+            if (chunkErrors.get(i) != null) {
+                errors.add(new BatchError(index, chunkErrors.get(i)));
+            } else if (ids != null) {
+                ids.set(index, idOf.applyAsInt(chunk.get(i)));
+            }
+        }
+        chunk.clear();
+        chunkIndexes.clear();
+    }
+}
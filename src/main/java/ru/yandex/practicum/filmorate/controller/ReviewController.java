@@ -9,6 +9,7 @@ import ru.yandex.practicum.filmorate.service.ReviewService;
 
 import javax.validation.Valid;
 import javax.validation.constraints.Min;
+import javax.validation.constraints.Positive;
 import java.util.List;
 import java.util.Optional;
 
@@ -52,10 +53,13 @@ public class ReviewController {
 
     @GetMapping
     public List<Review> getReviews(@RequestParam(required = false) Optional<Integer> filmId,
-                                   @RequestParam(required = false) Optional<Integer> count) {
+                                   @RequestParam(required = false) Optional<Integer> count,
+                                   @RequestParam(required = false) Integer after,
+                                   @RequestParam(required = false) Integer afterUseful,
+                                   @Positive @RequestParam(defaultValue = "1000") Integer limit) {
         if (filmId.isEmpty() && count.isEmpty()) {
-            log.info("Получен запрос GET /reviews");
-            return reviewService.getAllReviews();
+            log.info("Получен запрос GET /reviews?after={after}&afterUseful={afterUseful}&limit={limit}");
+            return reviewService.getReviewsPage(after, afterUseful, limit);
         } else if (filmId.isPresent() && count.isEmpty()) {
             log.info("Получен запрос GET /reviews?filmId={filmId}&count={count}");
             return reviewService.getReviewsByFilmId(filmId, Optional.of(10));
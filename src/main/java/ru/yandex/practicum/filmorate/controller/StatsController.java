@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.WriterStats;
+import ru.yandex.practicum.filmorate.service.StatsService;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/stats")
+@Slf4j
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class StatsController {
+
+    private final StatsService statsService;
+
+    @GetMapping("/caches")
+    public List<CacheStats> getCacheStats() {
+        log.debug("Получен запрос GET /stats/caches");
+        return statsService.getCacheStats();
+    }
+
+    @GetMapping("/writers")
+    public List<WriterStats> getWriterStats() {
+        log.debug("Получен запрос GET /stats/writers");
+        return statsService.getWriterStats();
+    }
+}
@@ -1,26 +1,42 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Feed;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.ImportReport;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import javax.validation.Valid;
+import javax.validation.Validator;
+import javax.validation.constraints.Positive;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
+@Validated
 @RestController
 @RequestMapping("/users")
 @Slf4j
 public class UserController {
 
     private final UserService userService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
 
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, ObjectMapper objectMapper, Validator validator) {
         this.userService = userService;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
     }
 
     @PostMapping
@@ -29,6 +45,16 @@ public class UserController {
         return userService.addUser(user);
     }
 
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE,
+            UserImportRecords.TEXT_CSV_VALUE})
+    public ImportReport importUsers(InputStream body,
+                                    @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                                    @RequestParam(defaultValue = "false") boolean feed) throws IOException {
+        log.debug("Получен запрос POST /users/import?feed={feed}");
+        boolean csv = contentType.isCompatibleWith(MediaType.parseMediaType(UserImportRecords.TEXT_CSV_VALUE));
+        return userService.importUsers(UserImportRecords.read(objectMapper, validator, body, csv), feed);
+    }
+
     @PutMapping
     public User updateUser(@Valid @RequestBody User user) {
         log.debug("Получен запрос PUT /users");
@@ -36,9 +62,16 @@ public class UserController {
     }
 
     @GetMapping
-    public List<User> getUsers() {
-        log.debug("Получен запрос GET /users");
-        return userService.getAllUsers();
+    public List<User> getUsers(@RequestParam(required = false) Integer after,
+                               @Valid @Positive @RequestParam(defaultValue = "1000") Integer limit) {
+        log.debug("Получен запрос GET /users?after={after}&limit={limit}");
+        return userService.getUsersPage(after, limit);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamUsers() {
+        log.debug("Получен запрос GET /users (application/x-ndjson)");
+        return NdjsonStreams.stream(objectMapper, userService::forEachUser);
     }
 
     @GetMapping("/{id}")
@@ -71,6 +104,13 @@ public class UserController {
         return userService.getCommonFriends(id, otherId);
     }
 
+    @GetMapping("/{id}/friends/suggestions")
+    public List<User> getFriendSuggestions(@PathVariable int id,
+                                           @Valid @Positive @RequestParam(defaultValue = "10") Integer limit) {
+        log.debug("Получен запрос GET /users/{id}/friends/suggestions?limit={limit}");
+        return userService.getFriendSuggestions(id, limit);
+    }
+
     @DeleteMapping("/{userId}")
     public String deleteUserById(@PathVariable int userId) {
         log.info("Получен запрос DELETE/users/{id}");
@@ -80,9 +120,19 @@ public class UserController {
 
 
     @GetMapping("/{id}/feed")
-    public List<Feed> getFeedsList(@PathVariable int id) {
-        log.debug("Получен запрос GET /users/" + id + "/feed");
-        return userService.getFeedsList(id);
+    public List<Feed> getFeedPage(@PathVariable int id,
+                                  @RequestParam(required = false) Integer afterEventId,
+                                  @Valid @Positive @RequestParam(defaultValue = "1000") Integer limit) {
+        log.debug("Получен запрос GET /users/" + id + "/feed?afterEventId={afterEventId}&limit={limit}");
+        return userService.getFeedPage(id, afterEventId, limit);
+    }
+
+    @GetMapping("/{id}/timeline")
+    public List<Feed> getTimeline(@PathVariable int id,
+                                  @RequestParam(required = false) Integer before,
+                                  @Valid @Positive @RequestParam(defaultValue = "20") Integer limit) {
+        log.debug("Получен запрос GET /users/{id}/timeline?before={before}&limit={limit}");
+        return userService.getTimeline(id, before, limit);
     }
 
     @GetMapping("{id}/recommendations")
@@ -0,0 +1,195 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.ImportRecord;
+import ru.yandex.practicum.filmorate.model.User;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Записи загрузки пользователей, которые читаются из тела запроса по одной: JSON-массив,
+ * application/x-ndjson или text/csv с заголовком. Запись с полем {@code friendId} - дружба
+ * ({@code userId}, {@code friendId}), остальные - пользователи. Ошибка в записи возвращается
+ * как запись с ошибкой; после нарушения структуры потока чтение заканчивается.
+ */
+final class UserImportRecords implements Iterator<ImportRecord> {
+
+    static final String TEXT_CSV_VALUE = "text/csv";
+
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final NodeReader reader;
+    private int index;
+    private ImportRecord next;
+    private boolean finished;
+
+    private UserImportRecords(ObjectMapper objectMapper, Validator validator, NodeReader reader) {
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.reader = reader;
+    }
+
+    static Iterator<ImportRecord> read(ObjectMapper objectMapper, Validator validator, InputStream body,
+                                       boolean csv) throws IOException {
+        NodeReader reader;
+        if (csv) {
+            reader = new CsvReader(objectMapper,
+                    new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)));
+        } else {
+            MappingIterator<JsonNode> nodes = objectMapper.readerFor(JsonNode.class).readValues(body);
+            reader = () -> nodes.hasNextValue() ? nodes.nextValue() : null;
+        }
+        return new UserImportRecords(objectMapper, validator, reader);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            advance();
+        }
+        return next != null;
+    }
+
+    @Override
+    public ImportRecord next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ImportRecord record = next;
+        next = null;
+        return record;
+    }
+
+    private void advance() {
+        int recordIndex = index++;
+        JsonNode node;
+        try {
+            node = reader.read();
+        } catch (IOException e) {
+            finished = true;
+            next = new ImportRecord(recordIndex, null, null, "Некорректные данные, загрузка остановлена: " +
+                    e.getMessage());
+            return;
+        } catch (IllegalArgumentException e) {
+            next = new ImportRecord(recordIndex, null, null, e.getMessage());
+            return;
+        }
+        if (node == null) {
+            finished = true;
+            return;
+        }
+        try {
+            if (node.has("friendId")) {
+                Friendship friendship = objectMapper.treeToValue(node, Friendship.class);
+                next = new ImportRecord(recordIndex, null, friendship, validate(friendship));
+            } else {
+                User user = objectMapper.treeToValue(node, User.class);
+                next = new ImportRecord(recordIndex, user, null, validate(user));
+            }
+        } catch (JsonProcessingException e) {
+            next = new ImportRecord(recordIndex, null, null, e.getOriginalMessage());
+        }
+    }
+
+    private <T> String validate(T item) {
+        Set<ConstraintViolation<T>> violations = validator.validate(item);
+        return violations.isEmpty() ? null : JsonBatches.describe(violations);
+    }
+
+    @FunctionalInterface
+    private interface NodeReader {
+        /**
+         * Возвращает следующую запись или {@code null}, если поток закончился.
+         */
+        JsonNode read() throws IOException;
+    }
+
+    /**
+     * Строки CSV в виде JSON-объектов с полями из заголовка. Поддерживаются значения в двойных
+     * кавычках без переносов строк, пустое значение означает отсутствие поля.
+     */
+    private static final class CsvReader implements NodeReader {
+        private final ObjectMapper objectMapper;
+        private final BufferedReader lines;
+        private List<String> header;
+
+        private CsvReader(ObjectMapper objectMapper, BufferedReader lines) {
+            this.objectMapper = objectMapper;
+            this.lines = lines;
+        }
+
+        @Override
+        public JsonNode read() throws IOException {
+            String line;
+            do {
+                line = lines.readLine();
+                if (line == null) {
+                    return null;
+                }
+            } while (line.isBlank());
+            if (header == null) {
+                header = split(line);
+                return read();
+            }
+            List<String> values = split(line);
+            if (values.size() != header.size()) {
+                throw new IllegalArgumentException("Ожидалось полей - " + header.size() + ", получено - " +
+                        values.size());
+            }
+            ObjectNode node = objectMapper.createObjectNode();
+            for (int i = 0; i < values.size(); i++) {
+                if (!values.get(i).isEmpty()) {
+                    node.put(header.get(i), values.get(i));
+                }
+            }
+            return node;
+        }
+
+        private static List<String> split(String line) {
+            List<String> values = new ArrayList<>();
+            StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        value.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        value.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    values.add(value.toString().trim());
+                    value.setLength(0);
+                } else {
+                    value.append(c);
+                }
+            }
+            if (quoted) {
+                throw new IllegalArgumentException("Незакрытая кавычка в строке: " + line);
+            }
+            values.add(value.toString().trim());
+            return values;
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package ru.yandex.practicum.filmorate.exception;
 
+/**
+ * Ответ 404 на запрос несуществующей сущности. Стек вызовов не заполняется: исключение описывает
+ * ожидаемую ситуацию, а не ошибку в коде.
+ */
 public class EntityNotFoundException extends RuntimeException {
 
     public EntityNotFoundException(final String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class BatchResult {
+    private int accepted;
+    private int rejected;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<Integer> ids;
+    private List<BatchError> errors;
+}
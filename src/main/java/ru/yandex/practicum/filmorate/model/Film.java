@@ -30,4 +30,5 @@ public class Film {
     private Mpa mpa;
     private Set<Genre> genres = new HashSet<>();
     private Set<Director> directors = new HashSet<>();
+    private int likesCount;
 }
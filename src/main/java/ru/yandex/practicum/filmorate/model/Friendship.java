@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import javax.validation.constraints.NotNull;
+
+@Data
+@AllArgsConstructor
+public class Friendship {
+    @NotNull
+    private Integer userId;
+    @NotNull
+    private Integer friendId;
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Запись загружаемого файла: пользователь, дружба или ошибка разбора записи.
+ */
+@Data
+@AllArgsConstructor
+public class ImportRecord {
+    private int index;
+    private User user;
+    private Friendship friendship;
+    private String error;
+}
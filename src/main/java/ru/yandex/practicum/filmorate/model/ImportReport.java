@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class ImportReport {
+    private long records;
+    private long users;
+    private long friendships;
+    private long rejected;
+    private List<BatchError> errors;
+    private long elapsedMs;
+    private long recordsPerSecond;
+}
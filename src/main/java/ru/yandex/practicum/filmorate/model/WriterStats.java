@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class WriterStats {
+    private String name;
+    private boolean async;
+    private int queueDepth;
+    private int queueCapacity;
+    private long written;
+    private long failed;
+    private long flushes;
+    private long lastFlushMicros;
+    private long maxFlushMicros;
+    private long averageFlushMicros;
+}
@@ -5,6 +5,7 @@ import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.search.FilmSearchIndex;
 
 import java.util.List;
 
@@ -13,23 +14,30 @@ public class DirectorService {
 
     private static final String WRONG_DIRECTOR_ID = "Режиссёр с указанным не найден";
     private final DirectorStorage directorStorage;
+    private final FilmSearchIndex searchIndex;
 
     @Autowired
-    public DirectorService(DirectorStorage directorStorage) {
+    public DirectorService(DirectorStorage directorStorage, FilmSearchIndex searchIndex) {
         this.directorStorage = directorStorage;
+        this.searchIndex = searchIndex;
     }
 
     public Director addDirector(Director director) {
-        return directorStorage.addDirector(director);
+        Director createdDirector = directorStorage.addDirector(director);
+        searchIndex.putDirector(createdDirector);
+        return createdDirector;
     }
 
     public Director updateDirector(Director director) {
         getDirector(director.getId());
-        return directorStorage.updateDirector(director);
+        Director updatedDirector = directorStorage.updateDirector(director);
+        searchIndex.putDirector(updatedDirector);
+        return updatedDirector;
     }
 
     public void deleteDirector(int directorId) {
         directorStorage.deleteDirector(directorId);
+        searchIndex.removeDirector(directorId);
     }
 
     public Director getDirector(int directorId) {
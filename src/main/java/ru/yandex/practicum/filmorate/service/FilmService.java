@@ -2,16 +2,25 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmPopularityIndex;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.like.LikeMatrix;
 import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.search.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.transaction.UnitOfWork;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
-import java.util.List;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -22,33 +31,93 @@ public class FilmService {
     private final GenreStorage genreStorage;
     private final MpaStorage mpaStorage;
     private final DirectorStorage directorStorage;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmSearchIndex searchIndex;
+    private final LikeMatrix likeMatrix;
+    private final UnitOfWork unitOfWork;
+    private final Object[] likeLocks = new Object[LIKE_LOCK_STRIPES];
     private static final String WRONG_USER_ID = "Пользователь с указанным ID не найден";
     private static final String WRONG_FILM_ID = "Фильм с указанным ID не найден";
     private static final String WRONG_DIRECTOR_ID = "Режиссёр с указанным ID не найден";
+    private static final int LIKE_LOCK_STRIPES = 64;
 
     @Autowired
     public FilmService(FilmStorage filmStorage,
                        UserStorage userStorage,
                        GenreStorage genreStorage,
                        MpaStorage mpaStorage,
-                       DirectorStorage directorStorage) {
+                       DirectorStorage directorStorage,
+                       FilmPopularityIndex popularityIndex,
+                       FilmSearchIndex searchIndex,
+                       LikeMatrix likeMatrix,
+                       UnitOfWork unitOfWork) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
         this.genreStorage = genreStorage;
         this.mpaStorage = mpaStorage;
         this.directorStorage = directorStorage;
+        this.popularityIndex = popularityIndex;
+        this.searchIndex = searchIndex;
+        this.likeMatrix = likeMatrix;
+        this.unitOfWork = unitOfWork;
+        for (int i = 0; i < likeLocks.length; i++) {
+            likeLocks[i] = new Object();
+        }
     }
 
     public Film addFilm(Film film) {
-        return filmStorage.addFilm(film);
+        Film createdFilm = unitOfWork.execute(() -> filmStorage.addFilm(film));
+        popularityIndex.putFilm(createdFilm);
+        searchIndex.putFilm(createdFilm);
+        return createdFilm;
+    }
+
+    /**
+     * Добавляет часть пакета одной транзакцией. Возвращает ошибки в порядке переданных фильмов:
+     * {@code null} для добавленного фильма. Рейтинг, жанры и режиссёры проверяются по справочникам
+     * в памяти до записи, так что в транзакцию попадают только корректные фильмы.
+     */
+    public List<String> addFilms(List<Film> films) {
+        List<String> errors = new ArrayList<>(films.size());
+        List<Film> valid = new ArrayList<>(films.size());
+        for (Film film : films) {
+            String error = resolveReferences(film);
+            errors.add(error);
+            if (error == null) {
+                valid.add(film);
+            }
+        }
+        try {
+            filmStorage.addFilms(valid);
+        } catch (DataAccessException e) {
+            log.warn("Пакет из {} фильмов не добавлен: {}", valid.size(), e.getMessage());
+            for (int i = 0; i < films.size(); i++) {
+                if (errors.get(i) == null) {
+                    errors.set(i, "Фильм не сохранён: " + e.getMostSpecificCause().getMessage());
+                }
+            }
+            return errors;
+        }
+        for (Film film : valid) {
+            popularityIndex.putFilm(film);
+            searchIndex.putFilm(film);
+        }
+        return errors;
     }
 
     public Film updateFilm(Film film) {
-        return filmStorage.updateFilm(film);
+        Film updatedFilm = unitOfWork.execute(() -> filmStorage.updateFilm(film));
+        popularityIndex.putFilm(updatedFilm);
+        searchIndex.putFilm(updatedFilm);
+        return updatedFilm;
+    }
+
+    public List<Film> getFilmsPage(Integer afterId, int limit) {
+        return filmStorage.getFilmsPage(afterId, limit);
     }
 
-    public List<Film> getAllFilms() {
-        return filmStorage.getAllFilms();
+    public void forEachFilm(Consumer<Film> action) {
+        filmStorage.forEachFilm(action);
     }
 
     public Film getFilm(int id) {
@@ -56,23 +125,139 @@ public class FilmService {
                 .orElseThrow(() -> new EntityNotFoundException(WRONG_FILM_ID));
     }
 
+    /**
+     * Повторный лайк отсекается по матрице лайков ещё до обращения к хранилищу. Изменения одной пары
+     * фильм-пользователь выполняются под общей блокировкой, чтобы в хранилище они попадали в том же
+     * порядке, что и в матрицу. Если запись в хранилище не удалась, изменение матрицы отменяется,
+     * иначе пару уже нельзя было бы исправить через API.
+     */
     public void addLike(int filmId, int userId) {
-        getFilm(filmId);
-        getUser(userId);
-        filmStorage.addLike(filmId, userId);
+        checkFilmExists(filmId);
+        checkUserExists(userId);
+        synchronized (likeLock(filmId, userId)) {
+            if (!likeMatrix.addLike(filmId, userId)) {
+                return;
+            }
+            boolean added;
+            try {
+                added = unitOfWork.execute(() -> filmStorage.addLike(filmId, userId));
+            } catch (RuntimeException e) {
+                likeMatrix.removeLike(filmId, userId);
+                throw e;
+            }
+            if (added) {
+                popularityIndex.addLike(filmId);
+            }
+        }
     }
 
     public void removeLike(int filmId, int userId) {
-        getFilm(filmId);
-        getUser(userId);
-        filmStorage.removeLike(filmId, userId);
+        checkFilmExists(filmId);
+        checkUserExists(userId);
+        synchronized (likeLock(filmId, userId)) {
+            if (!likeMatrix.removeLike(filmId, userId)) {
+                return;
+            }
+            boolean removed;
+            try {
+                removed = unitOfWork.execute(() -> filmStorage.removeLike(filmId, userId));
+            } catch (RuntimeException e) {
+                likeMatrix.addLike(filmId, userId);
+                throw e;
+            }
+            if (removed) {
+                popularityIndex.removeLike(filmId);
+            }
+        }
+    }
+
+    /**
+     * Добавляет лайки пакетом. Возвращает ошибки в порядке переданных лайков: {@code null}
+     * для добавленного или уже существующего лайка. Фильмы и пользователи проверяются в хранилище
+     * одним запросом на пакет, повторные лайки отсекаются по матрице лайков, а в хранилище и индекс популярности
+     * новые лайки попадают одним пакетом. Пакет выполняется под блокировками всех затронутых пар.
+     */
+    public List<String> addLikes(List<FilmLike> likes) {
+        List<String> errors = new ArrayList<>(likes.size());
+        List<FilmLike> valid = new ArrayList<>(likes.size());
+        Set<Integer> missingFilmIds = missingIds(likes.stream().map(FilmLike::getFilmId).collect(Collectors.toSet()),
+                filmStorage::existsAll, filmStorage::exists);
+        Set<Integer> missingUserIds = missingIds(likes.stream().map(FilmLike::getUserId).collect(Collectors.toSet()),
+                userStorage::existsAll, userStorage::exists);
+        for (FilmLike like : likes) {
+            if (missingFilmIds.contains(like.getFilmId())) {
+                errors.add(WRONG_FILM_ID + ": " + like.getFilmId());
+            } else if (missingUserIds.contains(like.getUserId())) {
+                errors.add(WRONG_USER_ID + ": " + like.getUserId());
+            } else {
+                errors.add(null);
+                valid.add(like);
+            }
+        }
+        int[] stripes = valid.stream()
+                .mapToInt(like -> likeStripe(like.getFilmId(), like.getUserId()))
+                .distinct()
+                .sorted()
+                .toArray();
+        try {
+            withLikeLocks(stripes, 0, () -> addNewLikes(valid));
+        } catch (DataAccessException e) {
+            log.warn("Пакет из {} лайков не добавлен: {}", valid.size(), e.getMessage());
+            for (int i = 0; i < likes.size(); i++) {
+                if (errors.get(i) == null) {
+                    errors.set(i, "Лайк не сохранён: " + e.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Отсутствующие в хранилище ID. Поштучная проверка нужна, только если отсутствует хотя бы один.
+     */
+    private static Set<Integer> missingIds(Set<Integer> ids, Predicate<Collection<Integer>> existsAll,
+                                           IntPredicate exists) {
+        if (existsAll.test(ids)) {
+            return Set.of();
+        }
+        return ids.stream().filter(id -> !exists.test(id)).collect(Collectors.toSet());
+    }
+
+    private void addNewLikes(List<FilmLike> likes) {
+        List<FilmLike> added = new ArrayList<>(likes.size());
+        for (FilmLike like : likes) {
+            if (likeMatrix.addLike(like.getFilmId(), like.getUserId())) {
+                added.add(like);
+            }
+        }
+        try {
+            filmStorage.addLikes(added);
+        } catch (DataAccessException e) {
+            added.forEach(like -> likeMatrix.removeLike(like.getFilmId(), like.getUserId()));
+            throw e;
+        }
+        popularityIndex.addLikes(added.stream()
+                .collect(Collectors.groupingBy(FilmLike::getFilmId, Collectors.summingInt(like -> 1))));
+    }
+
+    /**
+     * Захватывает блокировки в порядке возрастания номеров, чтобы пакеты не блокировали друг друга.
+     */
+    private void withLikeLocks(int[] stripes, int from, Runnable action) {
+        if (from == stripes.length) {
+            action.run();
+            return;
+        }
+        synchronized (likeLocks[stripes[from]]) {
+            withLikeLocks(stripes, from + 1, action);
+        }
     }
 
     public List<Film> getPopularFilms(Integer count, Integer genreId, Integer year) {
         if (genreId != null) {
             getGenre(genreId);
         }
-        return filmStorage.getPopularFilms(count, genreId, year);
+        return filmStorage.getFilmsByIds(popularityIndex.getTopFilmIds(count, genreId, year));
     }
 
     public Genre getGenre(int genreId) {
@@ -98,24 +283,76 @@ public class FilmService {
         return filmStorage.getDirectorFilms(directorId, sortBy);
     }
 
-    private User getUser(int userId) {
-        return userStorage.getUser(userId)
-                .orElseThrow(() -> new EntityNotFoundException(WRONG_USER_ID));
+    private String resolveReferences(Film film) {
+        Optional<Mpa> mpa = mpaStorage.getMpa(film.getMpa().getId());
+        if (mpa.isEmpty()) {
+            return "Рейтинг MPA с ID " + film.getMpa().getId() + " не найден";
+        }
+        film.setMpa(mpa.get());
+        Set<Genre> genres = new LinkedHashSet<>();
+        for (Genre genre : Objects.requireNonNullElse(film.getGenres(), Set.<Genre>of())) {
+            Optional<Genre> storedGenre = genreStorage.getGenre(genre.getId());
+            if (storedGenre.isEmpty()) {
+                return "Жанр с ID " + genre.getId() + " не найден";
+            }
+            genres.add(storedGenre.get());
+        }
+        film.setGenres(genres);
+        Set<Director> directors = new LinkedHashSet<>();
+        for (Director director : Objects.requireNonNullElse(film.getDirectors(), Set.<Director>of())) {
+            Optional<Director> storedDirector = directorStorage.getDirector(director.getId());
+            if (storedDirector.isEmpty()) {
+                return "Режиссёр с ID " + director.getId() + " не найден";
+            }
+            directors.add(storedDirector.get());
+        }
+        film.setDirectors(directors);
+        return null;
+    }
+
+    private Object likeLock(int filmId, int userId) {
+        return likeLocks[likeStripe(filmId, userId)];
+    }
+
+    private int likeStripe(int filmId, int userId) {
+        return Math.floorMod(31 * filmId + userId, likeLocks.length);
+    }
+
+    private void checkFilmExists(int filmId) {
+        if (!filmStorage.exists(filmId)) {
+            throw new EntityNotFoundException(WRONG_FILM_ID);
+        }
+    }
+
+    private void checkUserExists(int userId) {
+        if (!userStorage.exists(userId)) {
+            throw new EntityNotFoundException(WRONG_USER_ID);
+        }
     }
 
     public List<Film> getCommonFilms(int userId, int friendId) {
-        getUser(userId);
-        getUser(friendId);
-        return filmStorage.getCommonFilms(userId, friendId);
+        if (!userStorage.existsAll(List.of(userId, friendId))) {
+            throw new EntityNotFoundException(WRONG_USER_ID);
+        }
+        return filmStorage.getFilmsByIds(likeMatrix.getCommonFilmIds(userId, friendId));
     }
 
     public void deleteFilmById(int filmId) {
-        filmStorage.deleteFilmById(filmId);
+        unitOfWork.run(() -> filmStorage.deleteFilmById(filmId));
+        popularityIndex.removeFilm(filmId);
+        searchIndex.removeFilm(filmId);
+        likeMatrix.removeFilm(filmId);
         log.info("Фильм с id: {} удалён.", filmId);
     }
 
-    public List<Film> getFilmsBySearch(String query, String by) {
-        return filmStorage.getFilmsBySearch(query, by);
+    public List<Film> getFilmsBySearch(String query, String by, int offset, int limit) {
+        Set<String> criteria = Arrays.stream(by.split(",")).map(String::trim).collect(Collectors.toSet());
+        boolean byTitle = criteria.remove("title");
+        boolean byDirector = criteria.remove("director");
+        if (!criteria.isEmpty() || !(byTitle || byDirector)) {
+            return Collections.emptyList();
+        }
+        return filmStorage.getFilmsByIds(searchIndex.search(query, byTitle, byDirector, offset, limit));
     }
 
     private Director getDirector(int directorId) {
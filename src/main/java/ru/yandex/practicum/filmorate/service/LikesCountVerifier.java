@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.storage.film.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.util.Map;
+
+@Service
+@Slf4j
+public class LikesCountVerifier {
+
+    private final FilmStorage filmStorage;
+    private final FilmPopularityIndex popularityIndex;
+
+    @Autowired
+    public LikesCountVerifier(FilmStorage filmStorage, FilmPopularityIndex popularityIndex) {
+        this.filmStorage = filmStorage;
+        this.popularityIndex = popularityIndex;
+    }
+
+    /**
+     * Пересчитывает рассогласованные счётчики лайков. Индекс популярности хранит те же счётчики,
+     * поэтому получает те же изменения по фильмам, а не перестраивается из БД: перестроение
+     * под нагрузкой потеряло бы лайки, пришедшие между чтением БД и заменой индекса. Матрица лайков
+     * строится по FILM_LIKES, которую пересчёт не меняет.
+     */
+    @Scheduled(initialDelayString = "${filmorate.likes-count.verify-interval-ms:3600000}",
+            fixedDelayString = "${filmorate.likes-count.verify-interval-ms:3600000}")
+    public int verifyLikesCount() {
+        int inconsistent = filmStorage.countInconsistentLikes();
+        if (inconsistent == 0) {
+            log.debug("Счётчики лайков фильмов согласованы с FILM_LIKES");
+            return 0;
+        }
+        log.warn("Найдено {} фильмов с рассогласованным счётчиком лайков, выполняется пересчёт", inconsistent);
+        Map<Integer, Integer> deltas = filmStorage.rebuildLikesCount();
+        popularityIndex.addLikes(deltas);
+        return deltas.size();
+    }
+}
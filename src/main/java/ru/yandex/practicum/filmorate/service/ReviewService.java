@@ -3,11 +3,10 @@ package ru.yandex.practicum.filmorate.service;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
-import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Review;
-import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.review.ReviewStorage;
+import ru.yandex.practicum.filmorate.storage.transaction.UnitOfWork;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.util.List;
@@ -19,6 +18,7 @@ public class ReviewService {
     private final ReviewStorage reviewStorage;
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
+    private final UnitOfWork unitOfWork;
 
     private static final String WRONG_USER_ID = "Пользователь с указанным ID не найден";
     private static final String WRONG_FILM_ID = "Фильм с указанным ID не найден";
@@ -28,27 +28,29 @@ public class ReviewService {
     @Autowired
     public ReviewService(ReviewStorage reviewStorage,
                          FilmStorage filmStorage,
-                         UserStorage userStorage) {
+                         UserStorage userStorage,
+                         UnitOfWork unitOfWork) {
         this.reviewStorage = reviewStorage;
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
+        this.unitOfWork = unitOfWork;
     }
 
     public Review addReview(Review review) {
-        getUser(review.getUserId());
-        getFilm(review.getFilmId());
-        return reviewStorage.addReview(review);
+        checkUserExists(review.getUserId());
+        checkFilmExists(review.getFilmId());
+        return unitOfWork.execute(() -> reviewStorage.addReview(review));
     }
 
     public Review updateReview(Review review) {
         getReview(review.getReviewId());
-        getUser(review.getUserId());
-        getFilm(review.getFilmId());
-        return reviewStorage.updateReview(review);
+        checkUserExists(review.getUserId());
+        checkFilmExists(review.getFilmId());
+        return unitOfWork.execute(() -> reviewStorage.updateReview(review));
     }
 
     public void deleteReview(int reviewId) {
-        reviewStorage.deleteReview(reviewId);
+        unitOfWork.run(() -> reviewStorage.deleteReview(reviewId));
     }
 
     public Review getReview(int reviewId) {
@@ -56,8 +58,11 @@ public class ReviewService {
                 .orElseThrow(() -> new EntityNotFoundException(WRONG_REVIEW_ID));
     }
 
-    public List<Review> getAllReviews() {
-        return reviewStorage.getAllReviews();
+    public List<Review> getReviewsPage(Integer afterId, Integer afterUseful, int limit) {
+        if (afterId != null && afterUseful == null) {
+            afterUseful = getReview(afterId).getUseful();
+        }
+        return reviewStorage.getReviewsPage(afterUseful, afterId, limit);
     }
 
     public List<Review> getReviewsByFilmId(Optional<Integer> filmId, Optional<Integer> count) {
@@ -65,21 +70,23 @@ public class ReviewService {
     }
 
     public Review likeReview(int reviewId, int userId, boolean likeValue) {
-        return reviewStorage.likeReview(reviewId, userId, likeValue);
+        return unitOfWork.execute(() -> reviewStorage.likeReview(reviewId, userId, likeValue));
     }
 
     public Review deleteLikeReview(int reviewId, int userId, boolean likeValue) {
-        return reviewStorage.deleteLikeReview(reviewId, userId, likeValue);
+        return unitOfWork.execute(() -> reviewStorage.deleteLikeReview(reviewId, userId, likeValue));
     }
 
-    private User getUser(int userId) {
-        return userStorage.getUser(userId)
-                .orElseThrow(() -> new EntityNotFoundException(WRONG_USER_ID));
+    private void checkUserExists(int userId) {
+        if (!userStorage.exists(userId)) {
+            throw new EntityNotFoundException(WRONG_USER_ID);
+        }
     }
 
-    public Film getFilm(int filmId) {
-        return filmStorage.getFilm(filmId)
-                .orElseThrow(() -> new EntityNotFoundException(WRONG_FILM_ID));
+    private void checkFilmExists(int filmId) {
+        if (!filmStorage.exists(filmId)) {
+            throw new EntityNotFoundException(WRONG_FILM_ID);
+        }
     }
 
 }
@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.WriterStats;
+import ru.yandex.practicum.filmorate.storage.cache.CacheStatsSource;
+import ru.yandex.practicum.filmorate.storage.writer.WriterStatsSource;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Service
+public class StatsService {
+
+    private final List<CacheStatsSource> cacheStatsSources;
+    private final List<WriterStatsSource> writerStatsSources;
+
+    @Autowired
+    public StatsService(List<CacheStatsSource> cacheStatsSources, List<WriterStatsSource> writerStatsSources) {
+        this.cacheStatsSources = cacheStatsSources;
+        this.writerStatsSources = writerStatsSources;
+    }
+
+    public List<CacheStats> getCacheStats() {
+        return cacheStatsSources.stream()
+                .map(CacheStatsSource::getCacheStats)
+                .sorted(Comparator.comparing(CacheStats::getName))
+                .collect(Collectors.toList());
+    }
+
+    public List<WriterStats> getWriterStats() {
+        return writerStatsSources.stream()
+                .map(WriterStatsSource::getWriterStats)
+                .sorted(Comparator.comparing(WriterStats::getName))
+                .collect(Collectors.toList());
+    }
+}
@@ -2,16 +2,22 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
-import ru.yandex.practicum.filmorate.model.Feed;
-import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.storage.feed.FeedStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmPopularityIndex;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.like.LikeMatrix;
+import ru.yandex.practicum.filmorate.storage.transaction.UnitOfWork;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
@@ -20,28 +26,71 @@ public class UserService {
     private final UserStorage userStorage;
     private final FilmStorage filmStorage;
     private final FeedStorage feedStorage;
+    private final FilmPopularityIndex popularityIndex;
+    private final LikeMatrix likeMatrix;
+    private final FriendGraph friendGraph;
+    private final UnitOfWork unitOfWork;
+    private final int recommendationNeighbours;
+    private final int importChunkSize;
+    private final int importProgressInterval;
     private static final String WRONG_USER_ID = "Пользователь с указанным ID не найден";
+    private static final int MAX_REPORTED_IMPORT_ERRORS = 1000;
 
     @Autowired
-    public UserService(UserStorage userStorage, FilmStorage filmStorage, FeedStorage feedStorage) {
+    public UserService(UserStorage userStorage, FilmStorage filmStorage, FeedStorage feedStorage,
+                       FilmPopularityIndex popularityIndex, LikeMatrix likeMatrix, FriendGraph friendGraph,
+                       UnitOfWork unitOfWork,
+                       @Value("${filmorate.recommendations.neighbours:20}") int recommendationNeighbours,
+                       @Value("${filmorate.users.import.chunk-size:1000}") int importChunkSize,
+                       @Value("${filmorate.users.import.progress-interval:100000}") int importProgressInterval) {
         this.userStorage = userStorage;
         this.filmStorage = filmStorage;
         this.feedStorage = feedStorage;
+        this.popularityIndex = popularityIndex;
+        this.likeMatrix = likeMatrix;
+        this.friendGraph = friendGraph;
+        this.unitOfWork = unitOfWork;
+        this.recommendationNeighbours = recommendationNeighbours;
+        this.importChunkSize = importChunkSize;
+        this.importProgressInterval = importProgressInterval;
     }
 
     public User addUser(User user) {
         checkUserName(user);
-        return userStorage.addUser(user);
+        return unitOfWork.execute(() -> userStorage.addUser(user));
+    }
+
+    /**
+     * Загружает пользователей и связи дружбы из потока записей. Записи пишутся частями по
+     * {@code filmorate.users.import.chunk-size}, каждая часть - отдельной короткой транзакцией,
+     * поэтому загрузка не блокирует таблицы надолго. ID пользователя в записи считается ID
+     * в загружаемом файле: связи дружбы ссылаются на загруженных ранее в том же потоке пользователей
+     * по этому ID, на остальных - по ID в БД. Соответствие ID держится в памяти до конца загрузки.
+     */
+    public ImportReport importUsers(Iterator<ImportRecord> records, boolean withFeed) {
+        UserImport userImport = new UserImport(withFeed);
+        log.info("Начата загрузка пользователей, события ленты - {}", withFeed ? "создаются" : "не создаются");
+        records.forEachRemaining(userImport::add);
+        userImport.flush();
+        ImportReport report = userImport.report();
+        log.info("Загрузка пользователей завершена: записей - {}, пользователей - {}, связей - {}, ошибок - {}, " +
+                        "{} мс, {} записей в секунду", report.getRecords(), report.getUsers(), report.getFriendships(),
+                report.getRejected(), report.getElapsedMs(), report.getRecordsPerSecond());
+        return report;
     }
 
     public User updateUser(User user) {
         checkUserName(user);
-        getUser(user.getId());
-        return userStorage.updateUser(user);
+        checkUserExists(user.getId());
+        return unitOfWork.execute(() -> userStorage.updateUser(user));
     }
 
-    public List<User> getAllUsers() {
-        return userStorage.getAllUsers();
+    public List<User> getUsersPage(Integer afterId, int limit) {
+        return userStorage.getUsersPage(afterId, limit);
+    }
+
+    public void forEachUser(Consumer<User> action) {
+        userStorage.forEachUser(action);
     }
 
     public User getUser(int id) {
@@ -50,30 +99,43 @@ public class UserService {
     }
 
     public void addFriend(Integer userId, Integer userFriendId) {
-        getUser(userId);
-        getUser(userFriendId);
-        userStorage.addFriend(userId, userFriendId);
+        checkUserExists(userId);
+        checkUserExists(userFriendId);
+        unitOfWork.run(() -> userStorage.addFriend(userId, userFriendId));
     }
 
     public void deleteFriend(Integer userId, Integer userFriendId) {
-        getUser(userId);
-        getUser(userFriendId);
-        userStorage.deleteFriend(userId, userFriendId);
+        checkUserExists(userId);
+        checkUserExists(userFriendId);
+        unitOfWork.run(() -> userStorage.deleteFriend(userId, userFriendId));
     }
 
     public List<User> getFriendsList(Integer userId) {
-        getUser(userId);
+        checkUserExists(userId);
         return userStorage.getFriendsList(userId);
     }
 
     public List<User> getCommonFriends(Integer currentUserId, Integer anotherUserId) {
-        getUser(currentUserId);
-        getUser(anotherUserId);
+        if (!userStorage.existsAll(List.of(currentUserId, anotherUserId))) {
+            throw new EntityNotFoundException(WRONG_USER_ID);
+        }
         return userStorage.getCommonFriends(currentUserId, anotherUserId);
     }
 
+    public List<User> getFriendSuggestions(int userId, int limit) {
+        checkUserExists(userId);
+        return userStorage.getUsersByIds(friendGraph.getFriendSuggestionIds(userId, limit));
+    }
+
     public List<Film> getRecommendations(int userId) {
-        return filmStorage.getRecommendation(userStorage.getSimilarLikes(userId));
+        checkUserExists(userId);
+        return filmStorage.getFilmsByIds(likeMatrix.recommendFilmIds(userId, recommendationNeighbours));
+    }
+
+    private void checkUserExists(int userId) {
+        if (!userStorage.exists(userId)) {
+            throw new EntityNotFoundException(WRONG_USER_ID);
+        }
     }
 
     private void checkUserName(User user) {
@@ -85,12 +147,208 @@ public class UserService {
     }
 
     public void deleteUserById(int userId) {
-        userStorage.deleteUserById(userId);
+        Set<Integer> likedFilms = filmStorage.getLikedFilmIds(userId);
+        unitOfWork.run(() -> userStorage.deleteUserById(userId));
+        likedFilms.forEach(popularityIndex::removeLike);
+        likeMatrix.removeUser(userId);
         log.info("Пользователь с id: {} удалён.", userId);
     }
 
-    public List<Feed> getFeedsList(int id) {
-        getUser(id);
-        return feedStorage.getFeedsList(id);
+    public List<Feed> getFeedPage(int id, Integer afterEventId, int limit) {
+        checkUserExists(id);
+        return feedStorage.getFeedPage(id, afterEventId, limit);
+    }
+
+    public List<Feed> getTimeline(int userId, Integer beforeEventId, int limit) {
+        checkUserExists(userId);
+        return feedStorage.getTimeline(userId, beforeEventId, limit);
+    }
+
+    private final class UserImport {
+        private final boolean withFeed;
+        private final long start = System.nanoTime();
+        private final Map<Integer, Integer> importedIds = new HashMap<>();
+        private final List<ImportRecord> pendingUsers = new ArrayList<>();
+        private final List<ImportRecord> pendingFriendships = new ArrayList<>();
+        private final List<BatchError> errors = new ArrayList<>();
+        private long records;
+        private long users;
+        private long friendships;
+        private long rejected;
+        private long nextProgress = importProgressInterval;
+
+        private UserImport(boolean withFeed) {
+            this.withFeed = withFeed;
+        }
+
+        private void add(ImportRecord record) {
+            records++;
+            if (record.getError() != null) {
+                if (record.getUser() != null) {
+                    skipUser(record.getUser().getId());
+                }
+                reject(record, record.getError());
+            } else if (record.getUser() != null) {
+                if (!pendingFriendships.isEmpty()) {
+                    flushFriendships();
+                }
+                pendingUsers.add(record);
+                if (pendingUsers.size() >= importChunkSize) {
+                    flushUsers();
+                }
+            } else {
+                if (!pendingUsers.isEmpty()) {
+                    flushUsers();
+                }
+                pendingFriendships.add(record);
+                if (pendingFriendships.size() >= importChunkSize) {
+                    flushFriendships();
+                }
+            }
+            if (records >= nextProgress) {
+                nextProgress += importProgressInterval;
+                log.info("Загрузка пользователей: записей - {}, пользователей - {}, связей - {}, ошибок - {}, " +
+                        "{} записей в секунду", records, users, friendships, rejected, recordsPerSecond());
+            }
+        }
+
+        private void flush() {
+            flushUsers();
+            flushFriendships();
+        }
+
+        private void flushUsers() {
+            if (pendingUsers.isEmpty()) {
+                return;
+            }
+            List<User> chunk = new ArrayList<>(pendingUsers.size());
+            int[] sourceIds = new int[pendingUsers.size()];
+            for (int i = 0; i < pendingUsers.size(); i++) {
+                User user = pendingUsers.get(i).getUser();
+                checkUserName(user);
+                sourceIds[i] = user.getId();
+                chunk.add(user);
+            }
+            try {
+                userStorage.addUsers(chunk);
+                for (int i = 0; i < chunk.size(); i++) {
+                    mapUser(sourceIds[i], chunk.get(i));
+                }
+            } catch (DataAccessException e) {
+                log.debug("Часть загрузки из {} пользователей не добавлена, добавление по одному: {}", chunk.size(),
+                        e.getMessage());
+                for (int i = 0; i < chunk.size(); i++) {
+                    try {
+                        userStorage.addUsers(List.of(chunk.get(i)));
+                        mapUser(sourceIds[i], chunk.get(i));
+                    } catch (DataAccessException itemException) {
+                        skipUser(sourceIds[i]);
+                        reject(pendingUsers.get(i), "Пользователь не сохранён: " +
+                                itemException.getMostSpecificCause().getMessage());
+                    }
+                }
+            }
+            pendingUsers.clear();
+        }
+
+        private void mapUser(int sourceId, User user) {
+            users++;
+            if (sourceId != 0) {
+                importedIds.put(sourceId, user.getId());
+            }
+        }
+
+        private void flushFriendships() {
+            if (pendingFriendships.isEmpty()) {
+                return;
+            }
+            List<Friendship> chunk = new ArrayList<>(pendingFriendships.size());
+            List<ImportRecord> chunkRecords = new ArrayList<>(pendingFriendships.size());
+            resolveExistingUsers();
+            for (ImportRecord record : pendingFriendships) {
+                Friendship friendship = record.getFriendship();
+                int userId = resolveUserId(friendship.getUserId());
+                int friendId = resolveUserId(friendship.getFriendId());
+                if (userId < 0 || friendId < 0) {
+                    reject(record, WRONG_USER_ID + ": " + (userId < 0 ? friendship.getUserId()
+                            : friendship.getFriendId()));
+                    continue;
+                }
+                chunk.add(new Friendship(userId, friendId));
+                chunkRecords.add(record);
+            }
+            try {
+                userStorage.addFriends(chunk, withFeed);
+                friendships += chunk.size();
+            } catch (DataAccessException e) {
+                log.debug("Часть загрузки из {} связей не добавлена, добавление по одной: {}", chunk.size(),
+                        e.getMessage());
+                for (int i = 0; i < chunk.size(); i++) {
+                    try {
+                        userStorage.addFriends(List.of(chunk.get(i)), withFeed);
+                        friendships++;
+                    } catch (DataAccessException itemException) {
+                        reject(chunkRecords.get(i), "Связь не сохранена: " +
+                                itemException.getMostSpecificCause().getMessage());
+                    }
+                }
+            }
+            pendingFriendships.clear();
+        }
+
+        /**
+         * Связи с пользователем, который есть в файле, но не загрузился, отклоняются, а не
+         * привязываются к пользователю БД с тем же ID.
+         */
+        private void skipUser(int sourceId) {
+            if (sourceId != 0) {
+                importedIds.put(sourceId, -1);
+            }
+        }
+
+        /**
+         * ID связей части, которых нет среди загруженных, проверяются в БД одним запросом на часть.
+         * Результат запоминается до конца загрузки, поштучная проверка нужна, только если
+         * какого-то пользователя нет.
+         */
+        private void resolveExistingUsers() {
+            Set<Integer> unresolvedIds = new HashSet<>();
+            for (ImportRecord record : pendingFriendships) {
+                Friendship friendship = record.getFriendship();
+                unresolvedIds.add(friendship.getUserId());
+                unresolvedIds.add(friendship.getFriendId());
+            }
+            unresolvedIds.removeAll(importedIds.keySet());
+            if (unresolvedIds.isEmpty()) {
+                return;
+            }
+            if (userStorage.existsAll(unresolvedIds)) {
+                unresolvedIds.forEach(id -> importedIds.put(id, id));
+                return;
+            }
+            unresolvedIds.forEach(id -> importedIds.put(id, userStorage.exists(id) ? id : -1));
+        }
+
+        private int resolveUserId(int sourceId) {
+            return importedIds.getOrDefault(sourceId, -1);
+        }
+
+        private void reject(ImportRecord record, String error) {
+            rejected++;
+            if (errors.size() < MAX_REPORTED_IMPORT_ERRORS) {
+                errors.add(new BatchError(record.getIndex(), error));
+            }
+        }
+
+        private long recordsPerSecond() {
+            long nanos = Math.max(1, System.nanoTime() - start);
+            return records * 1_000_000_000L / nanos;
+        }
+
+        private ImportReport report() {
+            errors.sort(Comparator.comparingInt(BatchError::getIndex));
+            return new ImportReport(records, users, friendships, rejected, errors,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), recordsPerSecond());
+        }
     }
 }
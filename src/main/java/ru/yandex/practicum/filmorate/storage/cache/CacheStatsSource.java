@@ -0,0 +1,8 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import ru.yandex.practicum.filmorate.model.CacheStats;
+
+public interface CacheStatsSource {
+
+    CacheStats getCacheStats();
+}
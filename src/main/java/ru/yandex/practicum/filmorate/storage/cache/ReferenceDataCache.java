@@ -0,0 +1,67 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import ru.yandex.practicum.filmorate.model.CacheStats;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Справочник, целиком загруженный в память: жанры, рейтинги MPA, режиссёры.
+ * Чтение идёт без блокировок, изменения записываются хранилищем сразу после записи в БД.
+ * Промах кэша не считается отсутствием записи: значение догружается из БД и кладётся в кэш.
+ */
+public class ReferenceDataCache<T> {
+
+    private final String name;
+    private final ToIntFunction<T> idExtractor;
+    private volatile ConcurrentSkipListMap<Integer, T> values = new ConcurrentSkipListMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ReferenceDataCache(String name, ToIntFunction<T> idExtractor) {
+        this.name = name;
+        this.idExtractor = idExtractor;
+    }
+
+    public void reload(Collection<T> loaded) {
+        ConcurrentSkipListMap<Integer, T> reloaded = new ConcurrentSkipListMap<>();
+        for (T value : loaded) {
+            reloaded.put(idExtractor.applyAsInt(value), value);
+        }
+        values = reloaded;
+    }
+
+    public Optional<T> get(int id, IntFunction<Optional<T>> loader) {
+        T value = values.get(id);
+        if (value != null) {
+            hits.increment();
+            return Optional.of(value);
+        }
+        misses.increment();
+        Optional<T> loaded = loader.apply(id);
+        loaded.ifPresent(this::put);
+        return loaded;
+    }
+
+    public List<T> getAll() {
+        return new ArrayList<>(values.values());
+    }
+
+    public void put(T value) {
+        values.put(idExtractor.applyAsInt(value), value);
+    }
+
+    public void remove(int id) {
+        values.remove(id);
+    }
+
+    public CacheStats getStats() {
+        return new CacheStats(name, values.size(), hits.sum(), misses.sum(), 0);
+    }
+}
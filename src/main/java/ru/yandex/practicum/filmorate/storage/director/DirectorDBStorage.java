@@ -1,12 +1,16 @@
 package ru.yandex.practicum.filmorate.storage.director;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.CacheStats;
 import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.storage.cache.CacheStatsSource;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceDataCache;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+import ru.yandex.practicum.filmorate.storage.statement.StatementRegistry;
 
+import javax.annotation.PostConstruct;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.HashMap;
@@ -16,32 +20,52 @@ import java.util.Optional;
 
 @Component
 @Slf4j
-public class DirectorDBStorage implements DirectorStorage {
+public class DirectorDBStorage implements DirectorStorage, CacheStatsSource {
 
     private final JdbcTemplate jdbcTemplate;
+    private final FilmCache filmCache;
+    private final StatementRegistry statements;
+    private final ReferenceDataCache<Director> cache = new ReferenceDataCache<>("directors", Director::getId);
     private static final String WRONG_DIRECTOR_ID = "Режиссёр с указанным ID = {} не найден";
 
-    public DirectorDBStorage(JdbcTemplate jdbcTemplate) {
+    public DirectorDBStorage(JdbcTemplate jdbcTemplate, FilmCache filmCache, StatementRegistry statements) {
         this.jdbcTemplate = jdbcTemplate;
+        this.filmCache = filmCache;
+        this.statements = statements;
+    }
+
+    @PostConstruct
+    public void reloadCache() {
+        cache.reload(jdbcTemplate.query("SELECT * FROM directors", (rs, rowNum) -> makeDirector(rs)));
+        log.debug("Справочник directors загружен в кэш");
     }
 
     @Override
     public Optional<Director> getDirector(int directorId) {
-        String sqlDirector = "SELECT * FROM directors WHERE director_id = ?";
-        try {
-            Director director = jdbcTemplate.queryForObject(sqlDirector, (rs, rowNum) -> makeDirector(rs), directorId);
-            log.debug("Режиссёр с указанным ID = {} найден", directorId);
-            return Optional.of(director);
-        } catch (DataAccessException e) {
-            log.debug(WRONG_DIRECTOR_ID, directorId);
-            return Optional.empty();
-        }
+        return cache.get(directorId, this::loadDirector);
     }
 
     @Override
     public List<Director> getAllDirectors() {
-        String sqlDirectors = "SELECT * FROM directors";
-        return jdbcTemplate.query(sqlDirectors, (rs, rowNum) -> makeDirector(rs));
+        return cache.getAll();
+    }
+
+    @Override
+    public CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    private Optional<Director> loadDirector(int directorId) {
+        String sqlDirector = "SELECT * FROM directors WHERE director_id = ?";
+        Optional<Director> director = jdbcTemplate.query(sqlDirector, (rs, rowNum) -> makeDirector(rs), directorId)
+                .stream()
+                .findFirst();
+        if (director.isEmpty()) {
+            log.debug(WRONG_DIRECTOR_ID, directorId);
+        } else {
+            log.debug("Режиссёр с указанным ID = {} найден", directorId);
+        }
+        return director;
     }
 
     @Override
@@ -49,15 +73,12 @@ public class DirectorDBStorage implements DirectorStorage {
         Map<String, Object> values = new HashMap<>();
         values.put("name", director.getName());
 
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("directors")
-                .usingGeneratedKeyColumns("director_id");
-
-        int directorId = simpleJdbcInsert.executeAndReturnKey(values).intValue();
+        int directorId = statements.insert("directors", "director_id").executeAndReturnKey(values).intValue();
 
         log.debug("Режиссёр успешно создан с ID = {}", directorId);
 
         director.setId(directorId);
+        cache.put(new Director(directorId, director.getName()));
         return director;
     }
 
@@ -66,7 +87,10 @@ public class DirectorDBStorage implements DirectorStorage {
         String sqlForUpdateDirector = "UPDATE directors SET name = ? WHERE director_id = ?";
         int directorId = director.getId();
 
-        jdbcTemplate.update(sqlForUpdateDirector, director.getName(), directorId);
+        if (jdbcTemplate.update(sqlForUpdateDirector, director.getName(), directorId) > 0) {
+            cache.put(new Director(directorId, director.getName()));
+            filmCache.invalidateDirector(directorId);
+        }
 
         log.debug("Режиссёр с ID = {} успешно обновлен", directorId);
         return director;
@@ -76,6 +100,8 @@ public class DirectorDBStorage implements DirectorStorage {
     public void deleteDirector(int directorId) {
         String sqlDirector = "DELETE FROM directors WHERE director_id = ?";
         jdbcTemplate.update(sqlDirector, directorId);
+        cache.remove(directorId);
+        filmCache.invalidateDirector(directorId);
         log.debug("Режиссёр с ID - {} успешно удален", directorId);
     }
 
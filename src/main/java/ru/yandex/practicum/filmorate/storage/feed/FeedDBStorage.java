@@ -1,29 +1,156 @@
 package ru.yandex.practicum.filmorate.storage.feed;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.model.Feed;
 import ru.yandex.practicum.filmorate.model.OperationType;
+import ru.yandex.practicum.filmorate.model.WriterStats;
+import ru.yandex.practicum.filmorate.storage.transaction.TransactionEvents;
+import ru.yandex.practicum.filmorate.storage.writer.BatchWriter;
+import ru.yandex.practicum.filmorate.storage.writer.WriterStatsSource;
 
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.Date;
 import java.util.List;
 
 @Component
-public class FeedDBStorage implements FeedStorage {
+public class FeedDBStorage implements FeedStorage, WriterStatsSource {
+
+    private static final String SQL_INSERT_FEED = "INSERT INTO feed " +
+            "(user_id, entity_id, entity_type_id, event_type, operation, time_stamp) VALUES (?,?,?,?,?,?)";
 
     private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final FeedTimelines timelines;
+    private final boolean async;
+    private final BatchWriter<Feed> writer;
 
-    public FeedDBStorage(JdbcTemplate jdbcTemplate) {
+    public FeedDBStorage(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         FeedTimelines timelines,
+                         @Value("${filmorate.feed.writer.async:true}") boolean async,
+                         @Value("${filmorate.feed.writer.queue-capacity:10000}") int queueCapacity,
+                         @Value("${filmorate.feed.writer.flush-size:500}") int flushSize,
+                         @Value("${filmorate.feed.writer.flush-interval-ms:20}") long flushIntervalMs) {
         this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.timelines = timelines;
+        this.async = async;
+        this.writer = new BatchWriter<>("feed", this::insertFeeds, async, queueCapacity, flushSize,
+                flushIntervalMs);
     }
 
+    /**
+     * В синхронном режиме событие записывается в текущей транзакции, в асинхронном - ставится в очередь
+     * после её фиксации, чтобы откаченное изменение не попало в ленту.
+     */
     @Override
-    public List<Feed> getFeedsList(int id) {
-        String sql = "SELECT * FROM FEED WHERE user_id = ?";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeFeed(rs), id);
+    public void addFeed(int userId, int entityId, EventType eventType, OperationType operation) {
+        Feed feed = Feed.builder()
+                .userId(userId)
+                .eventType(eventType)
+                .operation(operation)
+                .entityId(entityId)
+                .timestamp(Timestamp.valueOf(LocalDateTime.now()))
+                .build();
+        if (async) {
+            TransactionEvents.afterCommit(() -> writer.append(feed));
+        } else {
+            writer.append(feed);
+        }
+    }
+
+    @Override
+    public void addFeeds(List<Feed> feeds) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (Feed feed : feeds) {
+            if (feed.getTimestamp() == null) {
+                feed.setTimestamp(now);
+            }
+        }
+        if (async) {
+            TransactionEvents.afterCommit(() -> writer.appendAll(feeds));
+        } else {
+            writer.appendAll(feeds);
+        }
+    }
+
+    @Override
+    public WriterStats getWriterStats() {
+        return writer.getWriterStats();
+    }
+
+    @PreDestroy
+    public void close() {
+        writer.close();
+    }
+
+    @Override
+    public List<Feed> getFeedPage(int userId, Integer afterEventId, int limit) {
+        writer.awaitFlushed();
+        String sql = "SELECT * FROM feed WHERE user_id = ? AND event_id > ? ORDER BY event_id LIMIT ?";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> makeFeed(rs), userId,
+                afterEventId == null ? 0 : afterEventId, limit);
+    }
+
+    @Override
+    public List<Feed> getTimeline(int userId, Integer beforeEventId, int limit) {
+        writer.awaitFlushed();
+        return timelines.getTimeline(userId, beforeEventId == null ? Integer.MAX_VALUE : beforeEventId, limit,
+                this::loadTimeline);
+    }
+
+    private List<Feed> loadTimeline(int userId, int beforeEventId, int limit) {
+        String sql = "SELECT f.* FROM feed f JOIN user_friend uf ON f.user_id = uf.friend_id " +
+                "WHERE uf.user_id = ? AND f.event_id < ? ORDER BY f.event_id DESC LIMIT ?";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> makeFeed(rs), userId, beforeEventId, limit);
+    }
+
+    /**
+     * Записывает события одним пакетом в одной транзакции и после её фиксации раздаёт их по лентам друзей.
+     */
+    private void insertFeeds(List<Feed> feeds) {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(SQL_INSERT_FEED, new String[]{"event_id"})) {
+                for (Feed feed : feeds) {
+                    ps.setInt(1, feed.getUserId());
+                    ps.setInt(2, feed.getEntityId());
+                    ps.setInt(3, getEntityTypeId(feed.getEventType()));
+                    ps.setInt(4, feed.getEventType().ordinal() + 1);
+                    ps.setInt(5, feed.getOperation().ordinal() + 1);
+                    ps.setTimestamp(6, new Timestamp(feed.getTimestamp().getTime()));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (int i = 0; keys.next(); i++) {
+                        feeds.get(i).setEventId(keys.getInt(1));
+                    }
+                }
+            }
+            return null;
+        }));
+        TransactionEvents.afterCommit(() -> feeds.forEach(timelines::publish));
+    }
+
+    private int getEntityTypeId(EventType eventType) {
+        switch (eventType) {
+            case LIKE:
+                return 2;
+            case REVIEW:
+                return 3;
+            default:
+                return 1;
+        }
     }
 
     private EventType getEventTypeById(int id) {
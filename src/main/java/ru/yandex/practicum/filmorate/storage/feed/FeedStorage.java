@@ -1,10 +1,18 @@
 package ru.yandex.practicum.filmorate.storage.feed;
 
+import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.OperationType;
 
 import java.util.List;
 
 public interface FeedStorage {
 
-    List<Feed> getFeedsList(int id);
+    void addFeed(int userId, int entityId, EventType eventType, OperationType operation);
+
+    void addFeeds(List<Feed> feeds);
+
+    List<Feed> getFeedPage(int userId, Integer afterEventId, int limit);
+
+    List<Feed> getTimeline(int userId, Integer beforeEventId, int limit);
 }
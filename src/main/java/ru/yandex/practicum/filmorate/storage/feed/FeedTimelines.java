@@ -0,0 +1,224 @@
+package ru.yandex.practicum.filmorate.storage.feed;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ленты событий друзей с раздачей при записи: новое событие сразу кладётся в ограниченные
+ * кольцевые буферы тех, кто добавил автора в друзья. Буфер пользователя создаётся при первом чтении
+ * запросом к таблице FEED, число буферов ограничено (LRU). События авторов, у которых подписчиков
+ * не меньше порога, не раздаются, а хранятся в буфере автора и подмешиваются при чтении.
+ * Если буферов не хватает для запрошенной страницы, лента читается из БД.
+ * Общая блокировка берётся только на операции с таблицей буферов, буфер читается и пополняется
+ * под своей блокировкой. Буфер загружается из БД без блокировок: он заранее ставится в таблицу
+ * пустым, события, раздаваемые во время загрузки, попадают в него и объединяются с загруженными,
+ * а другие читатели этого пользователя ждут окончания загрузки.
+ */
+@Component
+@Slf4j
+public class FeedTimelines {
+
+    private final FriendGraph friendGraph;
+    private final int capacity;
+    private final int celebrityFollowers;
+    private final LinkedHashMap<Integer, EventBuffer> timelines;
+    private final Map<Integer, EventBuffer> celebrityEvents = new ConcurrentHashMap<>();
+
+    public FeedTimelines(FriendGraph friendGraph,
+                         @Value("${filmorate.timeline.capacity:200}") int capacity,
+                         @Value("${filmorate.timeline.max-users:10000}") int maxUsers,
+                         @Value("${filmorate.timeline.celebrity-followers:1000}") int celebrityFollowers) {
+        this.friendGraph = friendGraph;
+        this.capacity = capacity;
+        this.celebrityFollowers = celebrityFollowers;
+        this.timelines = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, EventBuffer> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
+
+    public void publish(Feed feed) {
+        if (feed.getEventType() == EventType.FRIEND) {
+            synchronized (timelines) {
+                timelines.remove(feed.getUserId());
+            }
+        }
+        int[] followerIds = friendGraph.getFollowerIds(feed.getUserId());
+        if (followerIds.length >= celebrityFollowers) {
+            celebrityEvents.computeIfAbsent(feed.getUserId(), id -> new EventBuffer(false)).push(feed);
+            return;
+        }
+        List<EventBuffer> followerTimelines = new ArrayList<>();
+        synchronized (timelines) {
+            for (int followerId : followerIds) {
+                EventBuffer timeline = timelines.get(followerId);
+                if (timeline != null) {
+                    followerTimelines.add(timeline);
+                }
+            }
+        }
+        followerTimelines.forEach(timeline -> timeline.push(feed));
+    }
+
+    /**
+     * Возвращает до {@code limit} событий друзей пользователя с ID меньше {@code beforeEventId},
+     * от новых к старым. {@code loader} читает ту же страницу из БД.
+     */
+    public List<Feed> getTimeline(int userId, int beforeEventId, int limit, TimelineLoader loader) {
+        EventBuffer timeline = getLoadedTimeline(userId, loader);
+        if (timeline == null) {
+            return loader.load(userId, beforeEventId, limit);
+        }
+        NavigableMap<Integer, Feed> events = new TreeMap<>(Comparator.reverseOrder());
+        int completeFrom = timeline.addTo(events, beforeEventId);
+        for (Map.Entry<Integer, EventBuffer> celebrity : celebrityEvents.entrySet()) {
+            if (friendGraph.isFriend(userId, celebrity.getKey())) {
+                completeFrom = Math.max(completeFrom, celebrity.getValue().addTo(events, beforeEventId));
+            }
+        }
+        List<Feed> page = new ArrayList<>(limit);
+        for (Feed feed : events.values()) {
+            if (page.size() == limit || feed.getEventId() < completeFrom) {
+                break;
+            }
+            page.add(feed);
+        }
+        if (page.size() < limit && completeFrom > 0) {
+            log.debug("Лента пользователя {} не помещается в буфер, чтение из БД", userId);
+            return loader.load(userId, beforeEventId, limit);
+        }
+        return page;
+    }
+
+    /**
+     * Сбрасывает буферы пользователей, у которых изменился список друзей без события в ленте.
+     */
+    public void invalidate(Collection<Integer> userIds) {
+        synchronized (timelines) {
+            timelines.keySet().removeAll(userIds);
+        }
+    }
+
+    public void clear() {
+        synchronized (timelines) {
+            timelines.clear();
+        }
+        celebrityEvents.clear();
+    }
+
+    /**
+     * Возвращает загруженный буфер пользователя, при необходимости загружая его. Если ожидание
+     * загрузки прервано, возвращает {@code null}.
+     */
+    private EventBuffer getLoadedTimeline(int userId, TimelineLoader loader) {
+        while (true) {
+            EventBuffer timeline;
+            boolean created = false;
+            synchronized (timelines) {
+                timeline = timelines.get(userId);
+                if (timeline == null) {
+                    timeline = new EventBuffer(true);
+                    timelines.put(userId, timeline);
+                    created = true;
+                }
+            }
+            if (!created) {
+                switch (timeline.awaitLoaded()) {
+                    case LOADED:
+                        return timeline;
+                    case INTERRUPTED:
+                        return null;
+                    default:
+                        continue;
+                }
+            }
+            try {
+                timeline.fill(loader.load(userId, Integer.MAX_VALUE, capacity));
+                return timeline;
+            } catch (RuntimeException e) {
+                synchronized (timelines) {
+                    timelines.remove(userId, timeline);
+                }
+                timeline.fail();
+                throw e;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface TimelineLoader {
+        List<Feed> load(int userId, int beforeEventId, int limit);
+    }
+
+    private enum LoadState {
+        LOADING, LOADED, FAILED, INTERRUPTED
+    }
+
+    /**
+     * Кольцевой буфер последних событий. Все события с ID не меньше {@code completeFrom} в нём есть.
+     */
+    private final class EventBuffer {
+        private final NavigableMap<Integer, Feed> events = new TreeMap<>();
+        private int completeFrom;
+        private LoadState state;
+
+        private EventBuffer(boolean loading) {
+            state = loading ? LoadState.LOADING : LoadState.LOADED;
+        }
+
+        private synchronized void push(Feed feed) {
+            events.put(feed.getEventId(), feed);
+            trim();
+        }
+
+        /**
+         * Объединяет загруженные из БД события с событиями, разданными во время загрузки.
+         */
+        private synchronized void fill(List<Feed> loaded) {
+            loaded.forEach(feed -> events.put(feed.getEventId(), feed));
+            if (loaded.size() == capacity) {
+                completeFrom = Math.max(completeFrom, loaded.get(loaded.size() - 1).getEventId());
+            }
+            trim();
+            state = LoadState.LOADED;
+            notifyAll();
+        }
+
+        private synchronized void fail() {
+            state = LoadState.FAILED;
+            notifyAll();
+        }
+
+        private synchronized LoadState awaitLoaded() {
+            while (state == LoadState.LOADING) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return LoadState.INTERRUPTED;
+                }
+            }
+            return state;
+        }
+
+        private synchronized int addTo(Map<Integer, Feed> target, int beforeEventId) {
+            target.putAll(events.headMap(beforeEventId, false));
+            return completeFrom;
+        }
+
+        private void trim() {
+            while (events.size() > capacity) {
+                completeFrom = Math.max(completeFrom, events.pollFirstEntry().getKey() + 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.cache.CacheStatsSource;
+
+import java.util.*;
+
+/**
+ * Ограниченный по количеству записей LRU-кэш полностью собранных фильмов для чтения по ID.
+ * Хранятся и отдаются копии, поэтому изменения у вызывающего кода не попадают в кэш.
+ * Каждая инвалидация увеличивает поколение кэша и запоминает его для фильма: фильм, прочитанный
+ * из БД до своей инвалидации, в кэш уже не попадёт, а загрузки других фильмов она не отменяет.
+ * Запоминается не больше {@code maxSize} последних инвалидаций, по вытесненным запись отклоняется
+ * для всех загрузок, начатых раньше. Внутри транзакции запись дополнительно удаляется после коммита.
+ */
+@Component
+@Slf4j
+public class FilmCache implements CacheStatsSource {
+
+    private final boolean enabled;
+    private final int maxSize;
+    private final LinkedHashMap<Integer, Film> films;
+    private final LinkedHashMap<Integer, Long> invalidations;
+    private long generation;
+    private long invalidationFloor;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public FilmCache(@Value("${filmorate.film-cache.enabled:true}") boolean enabled,
+                     @Value("${filmorate.film-cache.max-size:10000}") int maxSize) {
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.films = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Film> eldest) {
+                if (size() > FilmCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.invalidations = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Long> eldest) {
+                if (size() > FilmCache.this.maxSize) {
+                    invalidationFloor = Math.max(invalidationFloor, eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+        log.debug("Кэш фильмов {}, максимальный размер - {}", enabled ? "включён" : "выключен", maxSize);
+    }
+
+    public synchronized Optional<Film> get(int filmId) {
+        Film film = enabled ? films.get(filmId) : null;
+        if (film == null) {
+            misses++;
+            return Optional.empty();
+        }
+        hits++;
+        return Optional.of(copy(film));
+    }
+
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    public synchronized void put(Film film, long loadedAtGeneration) {
+        if (enabled && loadedAtGeneration >= invalidationFloor
+                && invalidations.getOrDefault(film.getId(), 0L) <= loadedAtGeneration) {
+            films.put(film.getId(), copy(film));
+        }
+    }
+
+    public void invalidate(int filmId) {
+        invalidateNow(filmId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidateNow(filmId);
+                }
+            });
+        }
+    }
+
+    public void invalidateAll(Collection<Integer> filmIds) {
+        filmIds.forEach(this::invalidate);
+    }
+
+    public void invalidateDirector(int directorId) {
+        List<Integer> filmIds = new ArrayList<>();
+        synchronized (this) {
+            for (Film film : films.values()) {
+                if (film.getDirectors().stream().anyMatch(director -> director.getId() == directorId)) {
+                    filmIds.add(film.getId());
+                }
+            }
+        }
+        invalidateAll(filmIds);
+    }
+
+    public synchronized void clear() {
+        generation++;
+        invalidationFloor = generation;
+        invalidations.clear();
+        films.clear();
+    }
+
+    @Override
+    public synchronized CacheStats getCacheStats() {
+        return new CacheStats("films", films.size(), hits, misses, evictions);
+    }
+
+    private synchronized void invalidateNow(int filmId) {
+        generation++;
+        invalidations.remove(filmId);
+        invalidations.put(filmId, generation);
+        films.remove(filmId);
+    }
+
+    private static Film copy(Film film) {
+        Set<Director> directors = new HashSet<>();
+        film.getDirectors().forEach(director -> directors.add(new Director(director.getId(), director.getName())));
+        return new Film(film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
+                film.getDuration(), film.getMpa(), new HashSet<>(film.getGenres()), directors, film.getLikesCount());
+    }
+}
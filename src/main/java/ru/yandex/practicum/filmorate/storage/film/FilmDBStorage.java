@@ -1,42 +1,101 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
-import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
-import org.springframework.jdbc.core.namedparam.SqlParameterSource;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import ru.yandex.practicum.filmorate.constants.MyConstants;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
 import ru.yandex.practicum.filmorate.model.*;
-
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.feed.FeedStorage;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.like.LikeMatrix;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.statement.StatementRegistry;
+import ru.yandex.practicum.filmorate.storage.transaction.TransactionEvents;
+import ru.yandex.practicum.filmorate.storage.writer.BatchWriter;
+import ru.yandex.practicum.filmorate.storage.writer.WriterStatsSource;
+
+import javax.annotation.PreDestroy;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Component
 @Slf4j
-public class FilmDBStorage implements FilmStorage {
+public class FilmDBStorage implements FilmStorage, WriterStatsSource {
 
     private final JdbcTemplate jdbcTemplate;
-    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final GenreStorage genreStorage;
+    private final DirectorStorage directorStorage;
+    private final MpaStorage mpaStorage;
+    private final FilmCache filmCache;
+    private final FeedStorage feedStorage;
+    private final LikeMatrix likeMatrix;
+    private final FilmPopularityIndex popularityIndex;
+    private final StatementRegistry statements;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean likesWriteBehind;
+    private final BatchWriter<LikeChange> likeWriter;
+    private final Map<Integer, Integer> pendingLikesByFilm = new ConcurrentHashMap<>();
+    private final Map<Integer, Integer> pendingLikesByUser = new ConcurrentHashMap<>();
     private static final String WRONG_FILM_ID = "Фильм с указанным ID не найден";
-    private static final String SQL_ADD_GENRE_CONDITION =
-            "WHERE f.film_id IN " + "(SELECT film_id FROM film_genres WHERE genre_id = :genre_id) ";
-    private static final String SQL_ADD_YEAR_CONDITION = "WHERE EXTRACT(YEAR FROM " +
-            "cast(f.release_date AS date)) = :year ";
-
-    public FilmDBStorage(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedParameterJdbcTemplate) {
+    private static final int HYDRATION_CHUNK_SIZE = 1000;
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final String SQL_FILMS_BY_IDS = "SELECT f.*, m.* FROM films f " +
+            "JOIN mpa m ON f.mpa_id = m.mpa_id WHERE f.film_id = ANY(?)";
+    private static final String SQL_FILM_ATTRIBUTES =
+            "SELECT film_id, 'GENRE' AS attribute_type, genre_id AS attribute_id FROM film_genres %s" +
+                    "UNION ALL " +
+                    "SELECT film_id, 'DIRECTOR', director_id FROM film_directors %s";
+    private static final String SQL_FILM_ATTRIBUTES_BY_IDS = String.format(SQL_FILM_ATTRIBUTES,
+            "WHERE film_id = ANY(?) ", "WHERE film_id = ANY(?)");
+
+    public FilmDBStorage(JdbcTemplate jdbcTemplate, GenreStorage genreStorage, DirectorStorage directorStorage,
+                         MpaStorage mpaStorage, FilmCache filmCache, FeedStorage feedStorage, LikeMatrix likeMatrix,
+                         FilmPopularityIndex popularityIndex, StatementRegistry statements,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${filmorate.likes.write-behind:false}") boolean likesWriteBehind,
+                         @Value("${filmorate.likes.writer.queue-capacity:100000}") int queueCapacity,
+                         @Value("${filmorate.likes.writer.flush-size:1000}") int flushSize,
+                         @Value("${filmorate.likes.writer.flush-interval-ms:20}") long flushIntervalMs) {
         this.jdbcTemplate = jdbcTemplate;
-        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+        this.genreStorage = genreStorage;
+        this.directorStorage = directorStorage;
+        this.mpaStorage = mpaStorage;
+        this.filmCache = filmCache;
+        this.feedStorage = feedStorage;
+        this.likeMatrix = likeMatrix;
+        this.popularityIndex = popularityIndex;
+        this.statements = statements;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.likesWriteBehind = likesWriteBehind;
+        this.likeWriter = new BatchWriter<>("likes", this::writeLikes, this::undoLikes, likesWriteBehind,
+                queueCapacity, flushSize, flushIntervalMs);
+    }
+
+    @Override
+    public WriterStats getWriterStats() {
+        return likeWriter.getWriterStats();
+    }
+
+    @PreDestroy
+    public void close() {
+        likeWriter.close();
     }
 
     @Override
@@ -47,11 +106,9 @@ public class FilmDBStorage implements FilmStorage {
         values.put("release_date", film.getReleaseDate());
         values.put("duration", film.getDuration());
         values.put("mpa_id", film.getMpa().getId());
+        values.put("likes_count", 0);
 
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate).withTableName("films")
-                .usingGeneratedKeyColumns("film_id");
-
-        int filmId = simpleJdbcInsert.executeAndReturnKey(values).intValue();
+        int filmId = statements.insert("films", "film_id").executeAndReturnKey(values).intValue();
 
         if (film.getGenres() != null) {
             addGenres(filmId, film.getGenres());
@@ -65,110 +122,280 @@ public class FilmDBStorage implements FilmStorage {
         return getFilm(filmId).orElseThrow(() -> new EntityNotFoundException(WRONG_FILM_ID));
     }
 
+    /**
+     * Добавляет фильмы одной транзакцией: строки FILMS, FILM_GENRES и FILM_DIRECTORS пишутся пакетами
+     * JDBC, сгенерированные ID проставляются в переданные объекты. Жанры и режиссёры должны быть
+     * заполнены полностью - фильмы не перечитываются из БД.
+     */
     @Override
-    public Film updateFilm(Film film) {
-        String sqlUpdateFilm =
-                "UPDATE films " + "SET name = ?, description = ?, release_date = ?, duration = ?, mpa_id = ? " +
-                        "WHERE film_id = ?";
-        int filmId = film.getId();
-        Optional<Film> filmOptional = getFilm(filmId);
-
-        if (filmOptional.isPresent()) {
-            jdbcTemplate.update(sqlUpdateFilm, film.getName(), film.getDescription(),
-                    film.getReleaseDate(), film.getDuration(),
-                    film.getMpa().getId(), filmId);
-            removeGenres(filmId, filmOptional.get().getGenres());
-            removeDirectors(filmId, filmOptional.get().getDirectors());
+    @Transactional
+    public List<Film> addFilms(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
         }
-
-        if (film.getGenres() != null) {
-            addGenres(filmId, film.getGenres());
+        String sqlInsertFilm = "INSERT INTO films (name, description, release_date, duration, mpa_id, likes_count) " +
+                "VALUES (?, ?, ?, ?, ?, 0)";
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sqlInsertFilm, new String[]{"film_id"})) {
+                for (Film film : films) {
+                    ps.setString(1, film.getName());
+                    ps.setString(2, film.getDescription());
+                    ps.setObject(3, film.getReleaseDate());
+                    ps.setInt(4, film.getDuration());
+                    ps.setInt(5, film.getMpa().getId());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (Film film : films) {
+                        if (!keys.next()) {
+                            throw new SQLException("Не получены ID добавленных фильмов");
+                        }
+                        film.setId(keys.getInt(1));
+                    }
+                }
+            }
+            return null;
+        });
+        List<Object[]> genres = new ArrayList<>();
+        List<Object[]> directors = new ArrayList<>();
+        for (Film film : films) {
+            if (film.getGenres() != null) {
+                film.getGenres().forEach(genre -> genres.add(new Object[]{film.getId(), genre.getId()}));
+            }
+            if (film.getDirectors() != null) {
+                film.getDirectors().forEach(director -> directors.add(new Object[]{film.getId(), director.getId()}));
+            }
         }
+        jdbcTemplate.batchUpdate("INSERT INTO film_genres (film_id, genre_id) VALUES (?,?)", genres);
+        jdbcTemplate.batchUpdate("INSERT INTO film_directors (film_id, director_id) VALUES (?,?)", directors);
+        log.debug("Добавлено фильмов - {}, жанров - {}, режиссёров - {}", films.size(), genres.size(),
+                directors.size());
+        return films;
+    }
 
-        if (film.getDirectors() != null) {
-            addDirectors(filmId, film.getDirectors());
+    /**
+     * Обновляет фильм одной транзакцией. Текущее состояние читается с блокировкой строки, затем
+     * записываются только отличия: строка FILMS - если изменились её поля, связи с жанрами
+     * и режиссёрами - только добавленные и удалённые. Новое состояние собирается из запроса
+     * и справочников без повторного чтения фильма.
+     */
+    @Override
+    @Transactional
+    public Film updateFilm(Film film) {
+        int filmId = film.getId();
+        awaitPendingLikes(List.of(filmId));
+        Film current = jdbcTemplate.query("SELECT f.*, m.* FROM films f JOIN mpa m ON f.mpa_id = m.mpa_id " +
+                        "WHERE f.film_id = ? FOR UPDATE", this::makeFilm, filmId).stream()
+                .findFirst()
+                .orElseThrow(() -> new EntityNotFoundException(WRONG_FILM_ID));
+        makeFilmsWithGenresAndDirectors(List.of(current));
+
+        Mpa mpa = current.getMpa();
+        boolean rowChanged = !Objects.equals(film.getName(), current.getName()) ||
+                !Objects.equals(film.getDescription(), current.getDescription()) ||
+                !Objects.equals(film.getReleaseDate(), current.getReleaseDate()) ||
+                film.getDuration() != current.getDuration() ||
+                film.getMpa().getId() != mpa.getId();
+        if (rowChanged) {
+            jdbcTemplate.update("UPDATE films SET name = ?, description = ?, release_date = ?, duration = ?, " +
+                            "mpa_id = ? WHERE film_id = ?", film.getName(), film.getDescription(),
+                    film.getReleaseDate(), film.getDuration(), film.getMpa().getId(), filmId);
+            if (film.getMpa().getId() != mpa.getId()) {
+                mpa = mpaStorage.getMpa(film.getMpa().getId()).orElse(film.getMpa());
+            }
         }
 
+        Set<Integer> oldGenreIds = current.getGenres().stream().map(Genre::getId).collect(Collectors.toSet());
+        Set<Integer> newGenreIds = film.getGenres() == null ? Set.of() :
+                film.getGenres().stream().map(Genre::getId).collect(Collectors.toCollection(TreeSet::new));
+        removeGenres(filmId, current.getGenres().stream()
+                .filter(genre -> !newGenreIds.contains(genre.getId()))
+                .collect(Collectors.toSet()));
+        addGenres(filmId, newGenreIds.stream()
+                .filter(genreId -> !oldGenreIds.contains(genreId))
+                .map(genreId -> new Genre(genreId, null))
+                .collect(Collectors.toSet()));
+
+        Set<Integer> oldDirectorIds = current.getDirectors().stream().map(Director::getId)
+                .collect(Collectors.toSet());
+        Set<Integer> newDirectorIds = film.getDirectors() == null ? Set.of() :
+                film.getDirectors().stream().map(Director::getId).collect(Collectors.toCollection(TreeSet::new));
+        removeDirectors(filmId, current.getDirectors().stream()
+                .filter(director -> !newDirectorIds.contains(director.getId()))
+                .collect(Collectors.toSet()));
+        addDirectors(filmId, newDirectorIds.stream()
+                .filter(directorId -> !oldDirectorIds.contains(directorId))
+                .map(directorId -> new Director(directorId, null))
+                .collect(Collectors.toSet()));
+
+        filmCache.invalidate(filmId);
+        Film updatedFilm = new Film(filmId, film.getName(), film.getDescription(), film.getReleaseDate(),
+                film.getDuration(), mpa, new LinkedHashSet<>(), new LinkedHashSet<>(), current.getLikesCount());
+        newGenreIds.forEach(genreId -> genreStorage.getGenre(genreId).ifPresent(updatedFilm.getGenres()::add));
+        newDirectorIds.forEach(directorId ->
+                directorStorage.getDirector(directorId).ifPresent(updatedFilm.getDirectors()::add));
         log.debug("Фильм успешно обновлен по указанном ID = {}", filmId);
-        return getFilm(filmId).orElseThrow(() -> new EntityNotFoundException(WRONG_FILM_ID));
+        return updatedFilm;
+    }
+
+    @Override
+    public List<Film> getFilmsPage(Integer afterId, int limit) {
+        String sqlFilms = "SELECT f.*, m.* " + "FROM films f " + "JOIN mpa m ON f.mpa_id = m.mpa_id " +
+                "WHERE f.film_id > ? ORDER BY f.film_id LIMIT ?";
+        List<Film> films = queryWithPendingLikes(() ->
+                jdbcTemplate.query(sqlFilms, this::makeFilm, afterId == null ? 0 : afterId, limit));
+        return makeFilmsWithGenresAndDirectors(films);
     }
 
     @Override
-    public List<Film> getAllFilms() {
-        String sqlFilms = "SELECT f.*, m.* " + "FROM films f " + "JOIN mpa m ON f.mpa_id = m.mpa_id";
-        List<Film> filmsWithoutGenres = jdbcTemplate.query(sqlFilms, this::makeFilm);
-        makeFilmsWithDirectors(filmsWithoutGenres);
-        return makeFilmsWithGenres(filmsWithoutGenres);
+    public void forEachFilm(Consumer<Film> action) {
+        awaitAllPendingLikes();
+        String sqlFilms = "SELECT f.*, m.* " + "FROM films f " + "JOIN mpa m ON f.mpa_id = m.mpa_id " +
+                "ORDER BY f.film_id";
+        List<Film> chunk = new ArrayList<>(HYDRATION_CHUNK_SIZE);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sqlFilms, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            chunk.add(makeFilm(rs, rs.getRow()));
+            if (chunk.size() == HYDRATION_CHUNK_SIZE) {
+                makeFilmsWithGenresAndDirectors(chunk).forEach(action);
+                chunk.clear();
+            }
+        });
+        makeFilmsWithGenresAndDirectors(chunk).forEach(action);
     }
 
     @Override
     public Optional<Film> getFilm(int id) {
+        Optional<Film> cachedFilm = filmCache.get(id);
+        if (cachedFilm.isPresent() && !pendingLikesByFilm.containsKey(id)) {
+            return cachedFilm;
+        }
+        awaitPendingLikes(List.of(id));
+        long cacheGeneration = filmCache.getGeneration();
         String sqlFilm = "SELECT f.*, m.* " + "FROM films f " +
                 "JOIN mpa m ON f.mpa_id = m.mpa_id " + "WHERE f.film_id = ? ";
-        try {
-            Film film = jdbcTemplate.queryForObject(sqlFilm, this::makeFilm, id);
-            makeFilmsWithDirectors(List.of(film));
-            makeFilmsWithGenres(List.of(film));
-            log.debug("Фильм с указанным ID = {} найден", id);
-            return Optional.of(film);
-        } catch (DataAccessException e) {
+        List<Film> films = jdbcTemplate.query(sqlFilm, this::makeFilm, id);
+        if (films.isEmpty()) {
             log.debug("Фильм с указанным ID = {} не найден", id);
             return Optional.empty();
         }
+        Film film = films.get(0);
+        makeFilmsWithGenresAndDirectors(films);
+        filmCache.put(film, cacheGeneration);
+        log.debug("Фильм с указанным ID = {} найден", id);
+        return Optional.of(film);
+    }
+
+    /**
+     * Проверка по индексу первичного ключа: строка фильма, жанры и режиссёры не читаются.
+     */
+    @Override
+    public boolean exists(int filmId) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT EXISTS(SELECT 1 FROM films WHERE film_id = ?)",
+                Boolean.class, filmId));
     }
 
     @Override
-    public void addLike(int filmId, int userId) {
+    public boolean existsAll(Collection<Integer> filmIds) {
+        Set<Integer> distinctIds = new HashSet<>(filmIds);
+        int found = 0;
+        for (Integer[] chunk : chunks(distinctIds)) {
+            found += jdbcTemplate.queryForObject("SELECT COUNT(*) FROM films WHERE film_id = ANY(?)", Integer.class,
+                    (Object) chunk);
+        }
+        return found == distinctIds.size();
+    }
+
+    @Override
+    @Transactional
+    public boolean addLike(int filmId, int userId) {
+        if (likesWriteBehind) {
+            appendLikes(List.of(new LikeChange(filmId, userId, true)));
+            return true;
+        }
         try {
-            jdbcTemplate.update(MyConstants.SQLFEEDFILM, userId, filmId, 2, 1, 2, LocalDateTime.now());
             jdbcTemplate.update("INSERT INTO film_likes (film_id, user_id) VALUES(?,?)", filmId, userId);
+            jdbcTemplate.update("UPDATE films SET likes_count = likes_count + 1 WHERE film_id = ?", filmId);
+            feedStorage.addFeed(userId, filmId, EventType.LIKE, OperationType.ADD);
+            filmCache.invalidate(filmId);
             log.debug("Лайк пользователя c ID = {} к фильму с ID = {} успешно добавлен", userId, filmId);
+            return true;
         } catch (DuplicateKeyException e) {
             // (ничего не делать) Подгон под тесты, т.к. постман и гит требуют 200 код даже в случае не добавленного в
             // FILM_LIKES дублированного значения
+            return false;
         }
     }
 
     @Override
-    public void removeLike(int filmId, int userId) {
-        jdbcTemplate.update(MyConstants.SQLFEEDFILM, userId, filmId, 2, 1, 1, LocalDateTime.now());
-        jdbcTemplate.update("DELETE FROM film_likes WHERE film_id = ? AND user_id = ?", filmId, userId);
+    @Transactional
+    public boolean removeLike(int filmId, int userId) {
+        if (likesWriteBehind) {
+            appendLikes(List.of(new LikeChange(filmId, userId, false)));
+            return true;
+        }
+        int removed = jdbcTemplate.update("DELETE FROM film_likes WHERE film_id = ? AND user_id = ?",
+                filmId, userId);
+        if (removed > 0) {
+            jdbcTemplate.update("UPDATE films SET likes_count = likes_count - 1 WHERE film_id = ?", filmId);
+            feedStorage.addFeed(userId, filmId, EventType.LIKE, OperationType.REMOVE);
+            filmCache.invalidate(filmId);
+        }
         log.debug("Лайк пользователя c ID = {} к фильму с ID = {} успешно удален", userId, filmId);
+        return removed > 0;
     }
 
+    /**
+     * Добавляет новые лайки пакетом: в FILM_LIKES они пишутся идемпотентным MERGE, счётчики лайков
+     * затронутых фильмов пересчитываются один раз, события ленты пишутся одним пакетом в той же
+     * транзакции. В режиме отложенной записи лайки ставятся в очередь записи.
+     */
     @Override
-    public List<Film> getPopularFilms(Integer count, Integer genreId, Integer year) {
-        List<Film> popularFilmsWithSort;
-        SqlParameterSource parameters = new MapSqlParameterSource("count", count)
-                .addValue("genre_id", genreId).addValue("year", year);
-
-
-        String sqlPopularFilms = "SELECT f.*, m.* " + "FROM films f " +
-                "LEFT JOIN film_likes fl on f.film_id = fl.film_id " +
-                "JOIN mpa m ON f.mpa_id = m.mpa_id ";
+    public void addLikes(List<FilmLike> likes) {
+        List<LikeChange> changes = new ArrayList<>(likes.size());
+        for (FilmLike like : likes) {
+            changes.add(new LikeChange(like.getFilmId(), like.getUserId(), true));
+        }
+        appendLikes(changes);
+        log.debug("Добавлено лайков - {}", likes.size());
+    }
 
-        if (genreId != null && year != null) {
-            sqlPopularFilms =
-                    sqlPopularFilms + SQL_ADD_GENRE_CONDITION + "AND EXTRACT(YEAR FROM " +
-                            "cast(f.release_date AS date)) = :year ";
-        } else if (genreId != null && year == null) {
-            sqlPopularFilms = sqlPopularFilms + SQL_ADD_GENRE_CONDITION;
-        } else if (genreId == null && year != null) {
-            sqlPopularFilms = sqlPopularFilms + SQL_ADD_YEAR_CONDITION;
+    @Override
+    public List<Film> getFilmsByIds(List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        awaitPendingLikes(ids);
+        List<Film> films = new ArrayList<>(ids.size());
+        for (Integer[] chunk : chunks(ids)) {
+            films.addAll(jdbcTemplate.query(SQL_FILMS_BY_IDS, this::makeFilm, new Object[]{chunk}));
         }
+        makeFilmsWithGenresAndDirectors(films);
 
-        String endSql = "GROUP BY f.film_id, fl.film_id " + "ORDER BY COUNT(fl.user_id) DESC " + "LIMIT :count";
-        sqlPopularFilms = sqlPopularFilms + endSql;
+        Map<Integer, Film> filmById = films.stream().collect(Collectors.toMap(Film::getId, Function.identity()));
+        return ids.stream()
+                .map(filmById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
 
-        popularFilmsWithSort = namedParameterJdbcTemplate.query(sqlPopularFilms, parameters, this::makeFilm);
-        makeFilmsWithDirectors(popularFilmsWithSort);
-        makeFilmsWithGenres(popularFilmsWithSort);
-        return popularFilmsWithSort;
+    @Override
+    public Set<Integer> getLikedFilmIds(int userId) {
+        if (pendingLikesByUser.containsKey(userId)) {
+            likeWriter.awaitFlushed();
+        }
+        return new HashSet<>(jdbcTemplate.queryForList("SELECT film_id FROM film_likes WHERE user_id = ?",
+                Integer.class, userId));
     }
 
     @Override
     public List<Film> getDirectorFilms(Integer directorId, String sortBy) {
-        List<Film> sortedFilms;
+        String sql;
         String sqlWithoutSort = "SELECT f.*, m.* " + "FROM films f " + "LEFT JOIN mpa m ON f.mpa_id = m.mpa_id " +
                 "LEFT JOIN film_directors fd ON f.film_id = fd.film_id " + "WHERE director_id = ?";
         String sqlSortByYear = "SELECT f.*, m.* " + "FROM films f " + "LEFT JOIN mpa m ON f.mpa_id = m.mpa_id " +
@@ -176,150 +403,268 @@ public class FilmDBStorage implements FilmStorage {
                 "ORDER BY f.release_date ASC";
         String sqlSortByLikes = "SELECT f.*, m.* " + "FROM films f " + "LEFT JOIN mpa m ON f.mpa_id = m.mpa_id " +
                 "LEFT JOIN film_directors fd ON f.film_id = fd.film_id " +
-                "LEFT JOIN film_likes fl ON f.film_id = fl.film_id " +
-                "WHERE fd.director_id = ? " + "GROUP BY f.film_id " + "ORDER BY COUNT (fl.user_id) DESC";
+                "WHERE fd.director_id = ? " + "ORDER BY f.likes_count DESC, f.film_id";
 
         if (SortType.YEAR.toString().equals(sortBy.toUpperCase())) {
-            sortedFilms = jdbcTemplate.query(sqlSortByYear, this::makeFilm, directorId);
+            sql = sqlSortByYear;
         } else if (SortType.LIKES.toString().equals(sortBy.toUpperCase())) {
-            sortedFilms = jdbcTemplate.query(sqlSortByLikes, this::makeFilm, directorId);
+            sql = sqlSortByLikes;
         } else {
-            sortedFilms = jdbcTemplate.query(sqlWithoutSort, this::makeFilm, directorId);
+            sql = sqlWithoutSort;
         }
 
-        makeFilmsWithDirectors(sortedFilms);
-        makeFilmsWithGenres(sortedFilms);
-
-        return sortedFilms;
-    }
-
-    @Override
-    public List<Film> getCommonFilms(int userId, int friendId) {
-        List<Film> sortedCommonFilms;
-        String sql =
-                "SELECT *\n" + "FROM FILMS \n" + "INNER JOIN mpa m ON FILMS.mpa_id = m.mpa_id \n" +
-                        "WHERE FILM_ID IN (SELECT FILM_ID \n" +
-                        "FROM FILM_LIKES \n" + "WHERE USER_ID = ?);";
-
-        String sqlSorted = "SELECT f.*, m.* " + "FROM films f " +
-                "LEFT JOIN film_likes fl on f.film_id = fl.film_id " +
-                "JOIN mpa m ON f.mpa_id = m.mpa_id " + "GROUP BY f.film_id, fl.film_id " +
-                "ORDER BY COUNT(fl.user_id) DESC ";
-
-        List<Film> userFilms = jdbcTemplate.query(sql, (rs, row) -> makeFilm(rs, row), userId);
-        List<Film> friendFilms = jdbcTemplate.query(sql, (rs, row) -> makeFilm(rs, row), friendId);
-        friendFilms.retainAll(userFilms);
-        sortedCommonFilms = jdbcTemplate.query(sqlSorted, (rs, row) -> makeFilm(rs, row));
-        sortedCommonFilms.retainAll(friendFilms);
-        return sortedCommonFilms;
+        List<Film> sortedFilms = queryWithPendingLikes(() -> jdbcTemplate.query(sql, this::makeFilm, directorId));
+        return makeFilmsWithGenresAndDirectors(sortedFilms);
     }
 
     @Override
     public void deleteFilmById(int filmId) {
-        if (!getFilm(filmId).isPresent()) {
+        if (!exists(filmId)) {
             throw new EntityNotFoundException("Фильм с id: " + filmId + " не найден.");
         }
         String sql = "DELETE FROM films WHERE film_id = ?";
         jdbcTemplate.update(sql, filmId);
-    }
-
-    @Override
-    public List<Film> getRecommendation(Set<Integer> usersId) {
-        String[] idStrings = usersId.stream().map(String::valueOf).toArray(String[]::new);
-
-        String joinedIds = String.join(",", idStrings);
-        String sql = "SELECT f.*, m.* FROM FILMS f JOIN MPA m ON f.mpa_id = m.mpa_id where FILM_ID in " +
-                "(" + joinedIds + ")";
-        List<Film> films = jdbcTemplate.query(sql, this::makeFilm);
-        makeFilmsWithDirectors(films);
-        return makeFilmsWithGenres(films);
+        filmCache.invalidate(filmId);
     }
 
     @Override
     public List<Film> getFilmsBySearch(String query, String by) {
+        String sqlTitleCondition = "LOWER(f.name) LIKE LOWER(?) ESCAPE '\\' ";
+        String sqlDirectorCondition = "LOWER(d.name) LIKE LOWER(?) ESCAPE '\\' ";
+        String sqlJoinDirectors = "LEFT JOIN film_directors fd ON f.film_id = fd.film_id " +
+                "LEFT JOIN directors d ON fd.director_id = d.director_id ";
+        String pattern = "%" + query.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
         String sql;
-        List<Film> films;
+        Object[] parameters;
         if (by.equals("title,director") || by.equals("director,title")) {
-            sql = "SELECT f.FILM_ID as film_id, f.NAME as film_name, f.DESCRIPTION as description, " +
-                    "RELEASE_DATE, DURATION, m.MPA_ID as mpa_id, m.NAME as mpa_name, " +
-                    "m.DESCRIPTION as mpa_description " +
-                    "FROM FILMS f left join FILM_DIRECTORS FD on f.FILM_ID = FD.FILM_ID " +
-                    "left join mpa m on f.MPA_ID = m.MPA_ID " +
-                    "left join FILM_LIKES b on f.FILM_ID = b.FILM_ID " +
-                    "left join DIRECTORS D on D.DIRECTOR_ID = FD.DIRECTOR_ID " +
-                    "WHERE LOWER(d.NAME) LIKE LOWER('%" + query +
-                    "%') or LOWER(f.NAME) LIKE LOWER('%" + query + "%') " +
-                    "GROUP BY f.FILM_ID " +
-                    "ORDER BY COUNT(b.USER_ID) DESC";
+            sql = statements.statement("films.search.title-director",
+                    () -> searchSql(sqlJoinDirectors, sqlTitleCondition + "OR " + sqlDirectorCondition));
+            parameters = new Object[]{pattern, pattern};
         } else if (by.equals("director")) {
-            sql = "SELECT * FROM (FILMS f\n" +
-                    "join FILM_DIRECTORS fd ON f.FILM_ID = fd.FILM_ID\n" +
-                    "join DIRECTORS d on fd.DIRECTOR_ID = d.DIRECTOR_ID join MPA ON f.MPA_ID = MPA.MPA_ID)\n" +
-                    "where LOWER(d.NAME) like LOWER('%" + query + "%')";
+            sql = statements.statement("films.search.director",
+                    () -> searchSql(sqlJoinDirectors, sqlDirectorCondition));
+            parameters = new Object[]{pattern};
         } else if (by.equals("title")) {
-            sql = "SELECT * FROM" +
-                    "(SELECT * FROM FILMS f where LOWER(f.NAME) like LOWER('%" + query +
-                    "%')) b join MPA ON b.MPA_ID = MPA.MPA_ID";
+            sql = statements.statement("films.search.title", () -> searchSql("", sqlTitleCondition));
+            parameters = new Object[]{pattern};
         } else {
             return Collections.emptyList();
         }
-        films = jdbcTemplate.query(sql, this::makeFilm);
-        makeFilmsWithDirectors(films);
-        makeFilmsWithGenres(films);
-        return films;
+        List<Film> films = jdbcTemplate.query(sql, this::makeFilm, parameters);
+        return makeFilmsWithGenresAndDirectors(films);
     }
 
-    private Film makeFilm(ResultSet rs, int rowNum) throws SQLException {
-        int filmId = rs.getInt("film_id");
-        try {
-            return new Film(filmId, rs.getString("name"), rs.getString("description"),
-                    rs.getDate("release_date").toLocalDate(),
-                    rs.getInt("duration"), makeMpa(rs), new HashSet<>(), new HashSet<>());
-        } catch (DataAccessException e) {
-            throw new EntityNotFoundException(WRONG_FILM_ID);
+    private static String searchSql(String joins, String condition) {
+        return "SELECT f.*, m.* FROM films f JOIN mpa m ON f.mpa_id = m.mpa_id " + joins +
+                "WHERE " + condition + "GROUP BY f.film_id, m.mpa_id ORDER BY f.likes_count DESC, f.film_id";
+    }
+
+    @Override
+    public int countInconsistentLikes() {
+        awaitAllPendingLikes();
+        String sql = "SELECT COUNT(*) FROM films f " +
+                "WHERE f.likes_count <> (SELECT COUNT(*) FROM film_likes fl WHERE fl.film_id = f.film_id)";
+        Integer count = jdbcTemplate.queryForObject(sql, Integer.class);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Строки рассогласованных фильмов блокируются на время пересчёта, а счётчик меняется на разницу
+     * с FILM_LIKES. Лайки, записанные параллельно, увеличивают счётчик уже после фиксации пересчёта
+     * и не теряются.
+     */
+    @Override
+    @Transactional
+    public Map<Integer, Integer> rebuildLikesCount() {
+        String sql = "SELECT f.film_id, " +
+                "(SELECT COUNT(*) FROM film_likes fl WHERE fl.film_id = f.film_id) - f.likes_count AS delta " +
+                "FROM films f " +
+                "WHERE f.likes_count <> (SELECT COUNT(*) FROM film_likes fl WHERE fl.film_id = f.film_id) " +
+                "FOR UPDATE";
+        Map<Integer, Integer> deltas = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            deltas.put(rs.getInt("film_id"), rs.getInt("delta"));
+        });
+        List<Object[]> updates = deltas.entrySet().stream()
+                .map(delta -> new Object[]{delta.getValue(), delta.getKey()})
+                .collect(Collectors.toList());
+        jdbcTemplate.batchUpdate("UPDATE films SET likes_count = likes_count + ? WHERE film_id = ?", updates);
+        filmCache.invalidateAll(deltas.keySet());
+        log.debug("Счётчик лайков пересчитан для {} фильмов", deltas.size());
+        return deltas;
+    }
+
+    /**
+     * Записывает накопленные изменения лайков одной транзакцией. Для каждой пары фильм-пользователь
+     * остаётся только итоговое изменение, чётное число изменений (лайк и его снятие) взаимно
+     * уничтожается. Счётчики лайков затронутых фильмов пересчитываются по FILM_LIKES. События ленты
+     * пишутся в той же транзакции для каждого изменения, поэтому незаписанный лайк не попадает в ленту.
+     */
+    private void writeLikes(List<LikeChange> changes) {
+        Map<Long, LikeChange> lastChanges = new HashMap<>();
+        Map<Long, Integer> changeCounts = new HashMap<>();
+        for (LikeChange change : changes) {
+            long key = ((long) change.filmId << 32) | change.userId;
+            lastChanges.put(key, change);
+            changeCounts.merge(key, 1, Integer::sum);
         }
+        List<LikeChange> added = new ArrayList<>();
+        List<LikeChange> removed = new ArrayList<>();
+        Set<Integer> touchedFilmIds = new TreeSet<>();
+        lastChanges.forEach((key, change) -> {
+            if (changeCounts.get(key) % 2 == 1) {
+                (change.added ? added : removed).add(change);
+                touchedFilmIds.add(change.filmId);
+            }
+        });
+        List<Integer> filmIds = new ArrayList<>(touchedFilmIds);
+        List<Feed> feeds = changes.stream()
+                .map(change -> Feed.builder()
+                        .userId(change.userId)
+                        .entityId(change.filmId)
+                        .eventType(EventType.LIKE)
+                        .operation(change.added ? OperationType.ADD : OperationType.REMOVE)
+                        .timestamp(change.timestamp)
+                        .build())
+                .collect(Collectors.toList());
+        transactionTemplate.executeWithoutResult(status -> {
+            feedStorage.addFeeds(feeds);
+            if (filmIds.isEmpty()) {
+                return;
+            }
+            jdbcTemplate.batchUpdate("MERGE INTO film_likes (film_id, user_id) KEY (film_id, user_id) VALUES (?,?)",
+                    added, added.size(), (ps, change) -> {
+                        ps.setInt(1, change.filmId);
+                        ps.setInt(2, change.userId);
+                    });
+            jdbcTemplate.batchUpdate("DELETE FROM film_likes WHERE film_id = ? AND user_id = ?",
+                    removed, removed.size(), (ps, change) -> {
+                        ps.setInt(1, change.filmId);
+                        ps.setInt(2, change.userId);
+                    });
+            jdbcTemplate.batchUpdate("UPDATE films SET likes_count = " +
+                            "(SELECT COUNT(*) FROM film_likes WHERE film_id = ?) WHERE film_id = ?",
+                    filmIds, filmIds.size(), (ps, filmId) -> {
+                        ps.setInt(1, filmId);
+                        ps.setInt(2, filmId);
+                    });
+        });
+        filmCache.invalidateAll(filmIds);
+        clearPendingLikes(changes);
+        log.debug("Записано изменений лайков - {} из {}, фильмов - {}", added.size() + removed.size(),
+                changes.size(), filmIds.size());
     }
 
-    private List<Film> makeFilmsWithGenres(List<Film> films) {
-        final Map<Integer, Film> filmById = films.stream().collect(Collectors.toMap(Film::getId, Function.identity()));
-        String sqlGenres =
-                "SELECT * " + "FROM film_genres fg " + "JOIN genres g on fg.genre_id = g.genre_id " +
-                        "WHERE fg.film_id IN (%s) " +
-                        "ORDER BY fg.FILM_ID";
-        String inSql = String.join(",", Collections.nCopies(films.size(), "?"));
+    /**
+     * Возвращает матрицу лайков и индекс популярности к состоянию БД для изменений, которые не удалось
+     * записать в режиме отложенной записи. Изменение откатывается, только если оно ещё отражено в матрице:
+     * лайк, снятый позже, повторно не снимается.
+     */
+    private void undoLikes(List<LikeChange> failed) {
+        for (int i = failed.size() - 1; i >= 0; i--) {
+            LikeChange change = failed.get(i);
+            if (change.added && likeMatrix.removeLike(change.filmId, change.userId)) {
+                popularityIndex.removeLike(change.filmId);
+            } else if (!change.added && likeMatrix.addLike(change.filmId, change.userId)) {
+                popularityIndex.addLike(change.filmId);
+            }
+            filmCache.invalidate(change.filmId);
+        }
+        clearPendingLikes(failed);
+        log.warn("Не записано изменений лайков - {}, изменения в памяти откачены", failed.size());
+    }
 
-        jdbcTemplate.query(String.format(sqlGenres, inSql),
-                (rs, rowNum) -> addGenreToFilm(rs, filmById.get(makeFilmId(rs))),
-                filmById.keySet().toArray());
-        return new ArrayList<>(filmById.values());
+    /**
+     * В режиме отложенной записи изменения ставятся в очередь после фиксации транзакции и учитываются
+     * по фильмам и пользователям: чтение ждёт записи очереди, только если затрагивает такие изменения.
+     */
+    private void appendLikes(List<LikeChange> changes) {
+        if (!likesWriteBehind) {
+            likeWriter.appendAll(changes);
+            return;
+        }
+        TransactionEvents.afterCommit(() -> {
+            for (LikeChange change : changes) {
+                pendingLikesByFilm.merge(change.filmId, 1, Integer::sum);
+                pendingLikesByUser.merge(change.userId, 1, Integer::sum);
+            }
+            likeWriter.appendAll(changes);
+        });
     }
 
-    private Film addGenreToFilm(ResultSet rs, Film film) throws SQLException {
-        Genre genre = new Genre(rs.getInt("genres.genre_id"), rs.getString("genres.name"));
-        film.getGenres().add(genre);
-        return film;
+    private void clearPendingLikes(List<LikeChange> changes) {
+        for (LikeChange change : changes) {
+            pendingLikesByFilm.computeIfPresent(change.filmId, (filmId, count) -> count > 1 ? count - 1 : null);
+            pendingLikesByUser.computeIfPresent(change.userId, (userId, count) -> count > 1 ? count - 1 : null);
+        }
     }
 
-    private List<Film> makeFilmsWithDirectors(List<Film> films) {
-        final Map<Integer, Film> filmById = films.stream().collect(Collectors.toMap(Film::getId, Function.identity()));
-        String sqlDirectors = "SELECT * " + "FROM film_directors fd " +
-                "JOIN directors d on fd.director_id = d.director_id " +
-                "WHERE fd.film_id IN (%s) " +
-                "ORDER BY d.director_id";
-        String inSql = String.join(",", Collections.nCopies(films.size(), "?"));
+    private void awaitPendingLikes(Collection<Integer> filmIds) {
+        if (!pendingLikesByFilm.isEmpty() && filmIds.stream().anyMatch(pendingLikesByFilm::containsKey)) {
+            likeWriter.awaitFlushed();
+        }
+    }
+
+    private void awaitAllPendingLikes() {
+        if (!pendingLikesByFilm.isEmpty()) {
+            likeWriter.awaitFlushed();
+        }
+    }
+
+    /**
+     * Выполняет запрос и, если среди найденных фильмов есть фильмы с незаписанными лайками,
+     * повторяет его после записи очереди.
+     */
+    private List<Film> queryWithPendingLikes(Supplier<List<Film>> query) {
+        List<Film> films = query.get();
+        if (!pendingLikesByFilm.isEmpty()
+                && films.stream().anyMatch(film -> pendingLikesByFilm.containsKey(film.getId()))) {
+            likeWriter.awaitFlushed();
+            films = query.get();
+        }
+        return films;
+    }
+
+    private Film makeFilm(ResultSet rs, int rowNum) throws SQLException {
+        return new Film(rs.getInt("film_id"), rs.getString("name"), rs.getString("description"),
+                rs.getDate("release_date").toLocalDate(),
+                rs.getInt("duration"), makeMpa(rs), new HashSet<>(), new HashSet<>(),
+                rs.getInt("likes_count"));
+    }
 
-        jdbcTemplate.query(String.format(sqlDirectors, inSql), (rs, rowNum) -> addDirectorToFilm(rs,
-                        filmById.get(makeFilmId(rs))),
-                filmById.keySet().toArray());
+    private List<Film> makeFilmsWithGenresAndDirectors(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        Map<Integer, Film> filmById = films.stream().collect(Collectors.toMap(Film::getId, Function.identity()));
+        for (Integer[] chunk : chunks(filmById.keySet())) {
+            jdbcTemplate.query(SQL_FILM_ATTRIBUTES_BY_IDS, rs -> {
+                addAttributeToFilm(rs, filmById);
+            }, chunk, chunk);
+        }
+        return films;
+    }
 
-        return new ArrayList<>(filmById.values());
+    private void addAttributeToFilm(ResultSet rs, Map<Integer, Film> filmById) throws SQLException {
+        Film film = filmById.get(makeFilmId(rs));
+        if (film == null) {
+            return;
+        }
+        int attributeId = rs.getInt("attribute_id");
+        if ("GENRE".equals(rs.getString("attribute_type"))) {
+            genreStorage.getGenre(attributeId).ifPresent(film.getGenres()::add);
+        } else {
+            directorStorage.getDirector(attributeId).ifPresent(film.getDirectors()::add);
+        }
     }
 
-    private Film addDirectorToFilm(ResultSet rs, Film film) throws SQLException {
-        Director director = new Director(rs.getInt("directors.director_id"),
-                rs.getString("directors.name"));
-        film.getDirectors().add(director);
-        return film;
+    private static List<Integer[]> chunks(Collection<Integer> ids) {
+        Integer[] allIds = ids.toArray(new Integer[0]);
+        List<Integer[]> chunks = new ArrayList<>();
+        for (int from = 0; from < allIds.length; from += HYDRATION_CHUNK_SIZE) {
+            chunks.add(Arrays.copyOfRange(allIds, from, Math.min(allIds.length, from + HYDRATION_CHUNK_SIZE)));
+        }
+        return chunks;
     }
 
     private Integer makeFilmId(ResultSet rs) throws SQLException {
@@ -332,6 +677,9 @@ public class FilmDBStorage implements FilmStorage {
     }
 
     private void removeGenres(int filmId, Set<Genre> genres) {
+        if (genres.isEmpty()) {
+            return;
+        }
         String sqlDeleteGenres = "DELETE FROM film_genres WHERE film_id = ? AND genre_id = ?";
         List<Integer> genresId = genres.stream().map(Genre::getId).collect(Collectors.toList());
 
@@ -350,6 +698,9 @@ public class FilmDBStorage implements FilmStorage {
     }
 
     private void addGenres(int filmId, Set<Genre> genres) {
+        if (genres.isEmpty()) {
+            return;
+        }
         String sqlUpdateGenres = "INSERT INTO film_genres (film_id, genre_id) VALUES (?,?)";
         List<Integer> genresId = genres.stream().map(Genre::getId).collect(Collectors.toList());
 
@@ -368,6 +719,9 @@ public class FilmDBStorage implements FilmStorage {
     }
 
     private void removeDirectors(int filmId, Set<Director> directors) {
+        if (directors.isEmpty()) {
+            return;
+        }
         String sqlDeleteDirectors = "DELETE FROM film_directors WHERE film_id = ? AND director_id = ?";
         List<Integer> directorsId = directors.stream().map(Director::getId).collect(Collectors.toList());
 
@@ -386,6 +740,9 @@ public class FilmDBStorage implements FilmStorage {
     }
 
     private void addDirectors(int filmId, Set<Director> directors) {
+        if (directors.isEmpty()) {
+            return;
+        }
         String sqlUpdateDirectors = "INSERT INTO film_directors (film_id, director_id) VALUES(?,?)";
         List<Integer> directorsId = directors.stream().map(Director::getId).collect(Collectors.toList());
 
@@ -402,4 +759,23 @@ public class FilmDBStorage implements FilmStorage {
             }
         });
     }
+
+    private static final class LikeChange {
+        private final int filmId;
+        private final int userId;
+        private final boolean added;
+        private final Timestamp timestamp;
+
+        private LikeChange(int filmId, int userId, boolean added) {
+            this.filmId = filmId;
+            this.userId = userId;
+            this.added = added;
+            this.timestamp = Timestamp.valueOf(LocalDateTime.now());
+        }
+
+        @Override
+        public String toString() {
+            return (added ? "+" : "-") + filmId + "/" + userId;
+        }
+    }
 }
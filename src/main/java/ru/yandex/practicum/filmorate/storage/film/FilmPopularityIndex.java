@@ -0,0 +1,213 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Рейтинг фильмов по количеству лайков, который держится в памяти и обновляется инкрементально.
+ * Для каждого жанра, года и пары жанр+год хранится отдельное упорядоченное множество,
+ * поэтому top-K по любому сочетанию фильтров читается без обращения к БД.
+ * Порядок совпадает с SQL-запросом популярных фильмов: по убыванию лайков, затем по ID.
+ */
+@Component
+@Slf4j
+public class FilmPopularityIndex {
+
+    private static final Comparator<RankedFilm> BY_LIKES = Comparator
+            .comparingInt((RankedFilm film) -> film.likes).reversed()
+            .thenComparingInt(film -> film.filmId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, RankedFilm> films = new HashMap<>();
+    private final NavigableSet<RankedFilm> all = new TreeSet<>(BY_LIKES);
+    private final Map<Integer, NavigableSet<RankedFilm>> byGenre = new HashMap<>();
+    private final Map<Integer, NavigableSet<RankedFilm>> byYear = new HashMap<>();
+    private final Map<Long, NavigableSet<RankedFilm>> byGenreAndYear = new HashMap<>();
+
+    public FilmPopularityIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        Map<Integer, RankedFilm> loaded = new HashMap<>();
+        jdbcTemplate.query("SELECT film_id, release_date, likes_count FROM films", rs -> {
+            int filmId = rs.getInt("film_id");
+            loaded.put(filmId, new RankedFilm(filmId, rs.getInt("likes_count"),
+                    rs.getDate("release_date").toLocalDate().getYear(), new int[0]));
+        });
+        Map<Integer, List<Integer>> genres = new HashMap<>();
+        jdbcTemplate.query("SELECT film_id, genre_id FROM film_genres", rs -> {
+            genres.computeIfAbsent(rs.getInt("film_id"), id -> new ArrayList<>()).add(rs.getInt("genre_id"));
+        });
+
+        lock.writeLock().lock();
+        try {
+            films.clear();
+            all.clear();
+            byGenre.clear();
+            byYear.clear();
+            byGenreAndYear.clear();
+            for (RankedFilm film : loaded.values()) {
+                int[] genreIds = genres.getOrDefault(film.filmId, List.of()).stream()
+                        .mapToInt(Integer::intValue).toArray();
+                link(new RankedFilm(film.filmId, film.likes, film.year, genreIds));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Индекс популярности фильмов построен, фильмов - {}", loaded.size());
+    }
+
+    public void putFilm(Film film) {
+        int[] genreIds = film.getGenres() == null ? new int[0] :
+                film.getGenres().stream().mapToInt(Genre::getId).distinct().toArray();
+        lock.writeLock().lock();
+        try {
+            RankedFilm old = unlink(film.getId());
+            int likes = old == null ? film.getLikesCount() : old.likes;
+            link(new RankedFilm(film.getId(), likes, film.getReleaseDate().getYear(), genreIds));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(int filmId) {
+        lock.writeLock().lock();
+        try {
+            unlink(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addLike(int filmId) {
+        changeLikes(filmId, 1);
+    }
+
+    public void removeLike(int filmId) {
+        changeLikes(filmId, -1);
+    }
+
+    /**
+     * Изменяет счётчики лайков нескольких фильмов за одну блокировку индекса.
+     */
+    public void addLikes(Map<Integer, Integer> likesByFilmId) {
+        lock.writeLock().lock();
+        try {
+            likesByFilmId.forEach((filmId, delta) -> {
+                RankedFilm old = unlink(filmId);
+                if (old != null) {
+                    link(new RankedFilm(filmId, Math.max(0, old.likes + delta), old.year, old.genreIds));
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int getLikesCount(int filmId) {
+        lock.readLock().lock();
+        try {
+            RankedFilm film = films.get(filmId);
+            return film == null ? 0 : film.likes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Integer> getTopFilmIds(int count, Integer genreId, Integer year) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<RankedFilm> ranking;
+            if (genreId != null && year != null) {
+                ranking = byGenreAndYear.get(genreYearKey(genreId, year));
+            } else if (genreId != null) {
+                ranking = byGenre.get(genreId);
+            } else if (year != null) {
+                ranking = byYear.get(year);
+            } else {
+                ranking = all;
+            }
+            if (ranking == null) {
+                return Collections.emptyList();
+            }
+            List<Integer> top = new ArrayList<>(Math.min(count, ranking.size()));
+            for (RankedFilm film : ranking) {
+                if (top.size() >= count) {
+                    break;
+                }
+                top.add(film.filmId);
+            }
+            return top;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void changeLikes(int filmId, int delta) {
+        addLikes(Map.of(filmId, delta));
+    }
+
+    private void link(RankedFilm film) {
+        films.put(film.filmId, film);
+        all.add(film);
+        byYear.computeIfAbsent(film.year, year -> new TreeSet<>(BY_LIKES)).add(film);
+        for (int genreId : film.genreIds) {
+            byGenre.computeIfAbsent(genreId, id -> new TreeSet<>(BY_LIKES)).add(film);
+            byGenreAndYear.computeIfAbsent(genreYearKey(genreId, film.year), key -> new TreeSet<>(BY_LIKES))
+                    .add(film);
+        }
+    }
+
+    private RankedFilm unlink(int filmId) {
+        RankedFilm film = films.remove(filmId);
+        if (film == null) {
+            return null;
+        }
+        all.remove(film);
+        removeFromRanking(byYear, film.year, film);
+        for (int genreId : film.genreIds) {
+            removeFromRanking(byGenre, genreId, film);
+            removeFromRanking(byGenreAndYear, genreYearKey(genreId, film.year), film);
+        }
+        return film;
+    }
+
+    private static <K> void removeFromRanking(Map<K, NavigableSet<RankedFilm>> rankings, K key, RankedFilm film) {
+        NavigableSet<RankedFilm> ranking = rankings.get(key);
+        if (ranking != null) {
+            ranking.remove(film);
+            if (ranking.isEmpty()) {
+                rankings.remove(key);
+            }
+        }
+    }
+
+    private static long genreYearKey(int genreId, int year) {
+        return ((long) genreId << 32) | (year & 0xFFFFFFFFL);
+    }
+
+    private static final class RankedFilm {
+        private final int filmId;
+        private final int likes;
+        private final int year;
+        private final int[] genreIds;
+
+        private RankedFilm(int filmId, int likes, int year, int[] genreIds) {
+            this.filmId = filmId;
+            this.likes = likes;
+            this.year = year;
+            this.genreIds = genreIds;
+        }
+    }
+}
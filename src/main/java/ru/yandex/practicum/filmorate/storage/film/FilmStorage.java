@@ -1,28 +1,42 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
     Film addFilm(Film film);
 
+    List<Film> addFilms(List<Film> films);
+
     Film updateFilm(Film film);
 
-    List<Film> getAllFilms();
+    List<Film> getFilmsPage(Integer afterId, int limit);
+
+    void forEachFilm(Consumer<Film> action);
 
     Optional<Film> getFilm(int id);
 
-    void addLike(int filmId, int userId);
+    boolean exists(int filmId);
+
+    boolean existsAll(Collection<Integer> filmIds);
 
-    void removeLike(int filmId, int userId);
+    boolean addLike(int filmId, int userId);
 
-    List<Film> getPopularFilms(Integer count, Integer genreId, Integer year);
+    boolean removeLike(int filmId, int userId);
 
-    List<Film> getCommonFilms(int userId, int friendId);
+    void addLikes(List<FilmLike> likes);
+
+    List<Film> getFilmsByIds(List<Integer> ids);
+
+    Set<Integer> getLikedFilmIds(int userId);
 
     void deleteFilmById(int filmId);
 
@@ -30,5 +44,10 @@ public interface FilmStorage {
 
     List<Film> getFilmsBySearch(String query, String by);
 
-    List<Film> getRecommendation(Set<Integer> userId);
+    int countInconsistentLikes();
+
+    /**
+     * Исправляет рассогласованные счётчики лайков и возвращает изменение счётчика по ID фильма.
+     */
+    Map<Integer, Integer> rebuildLikesCount();
 }
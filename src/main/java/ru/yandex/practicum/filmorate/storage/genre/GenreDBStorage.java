@@ -1,11 +1,14 @@
 package ru.yandex.practicum.filmorate.storage.genre;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.CacheStats;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.cache.CacheStatsSource;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceDataCache;
 
+import javax.annotation.PostConstruct;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
@@ -13,31 +16,42 @@ import java.util.Optional;
 
 @Component
 @Slf4j
-public class GenreDBStorage implements GenreStorage {
+public class GenreDBStorage implements GenreStorage, CacheStatsSource {
 
     private final JdbcTemplate jdbcTemplate;
+    private final ReferenceDataCache<Genre> cache = new ReferenceDataCache<>("genres", Genre::getId);
 
     public GenreDBStorage(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
     }
 
+    @PostConstruct
+    public void reloadCache() {
+        cache.reload(jdbcTemplate.query("SELECT * FROM genres", (rs, rowNum) -> makeGenre(rs)));
+        log.debug("Справочник genres загружен в кэш");
+    }
+
     @Override
     public Optional<Genre> getGenre(int genreId) {
-        String sqlGenre = "SELECT * FROM genres WHERE genre_id = ?";
-        try {
-            Genre genre = jdbcTemplate.queryForObject(sqlGenre, (rs, rowNum) -> makeGenre(rs), genreId);
-            log.debug("Genre с указанным ID = {} найден", genreId);
-            return Optional.ofNullable(genre);
-        } catch (DataAccessException e) {
-            log.debug("Genre с указанным ID = {} не найден", genreId);
-            return Optional.empty();
-        }
+        return cache.get(genreId, this::loadGenre);
     }
 
     @Override
     public List<Genre> getAllGenres() {
-        String sqlGenres = "SELECT * FROM genres";
-        return jdbcTemplate.query(sqlGenres, (rs, rowNum) -> makeGenre(rs));
+        return cache.getAll();
+    }
+
+    @Override
+    public CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    private Optional<Genre> loadGenre(int genreId) {
+        String sqlGenre = "SELECT * FROM genres WHERE genre_id = ?";
+        Optional<Genre> genre = jdbcTemplate.query(sqlGenre, (rs, rowNum) -> makeGenre(rs), genreId).stream()
+                .findFirst();
+        log.debug("Genre с указанным ID = {} {}", genreId, genre.isPresent() ? "найден" : "не найден");
+        return genre;
     }
 
     private Genre makeGenre(ResultSet rs) throws SQLException {
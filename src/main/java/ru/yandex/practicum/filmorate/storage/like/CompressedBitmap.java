@@ -0,0 +1,402 @@
+package ru.yandex.practicum.filmorate.storage.like;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Сжатое множество неотрицательных int по схеме Roaring: числа группируются по старшим 16 битам,
+ * группа из не более чем 4096 чисел хранится отсортированным массивом short, более плотная -
+ * битовой картой на 65536 бит. Класс не потокобезопасен, синхронизацию обеспечивает владелец.
+ */
+public final class CompressedBitmap {
+
+    private static final int ARRAY_MAX_SIZE = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    private int[] keys = new int[0];
+    private Container[] containers = new Container[0];
+    private int size;
+    private int cardinality;
+
+    public static CompressedBitmap of(int... values) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    public boolean add(int value) {
+        int high = value >>> 16;
+        int index = Arrays.binarySearch(keys, 0, size, high);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, high, new Container());
+        }
+        if (containers[index].add(value & 0xFFFF)) {
+            cardinality++;
+            return true;
+        }
+        return false;
+    }
+
+    public boolean remove(int value) {
+        int index = Arrays.binarySearch(keys, 0, size, value >>> 16);
+        if (index < 0 || !containers[index].remove(value & 0xFFFF)) {
+            return false;
+        }
+        cardinality--;
+        if (containers[index].cardinality == 0) {
+            removeContainer(index);
+        }
+        return true;
+    }
+
+    public boolean contains(int value) {
+        int index = Arrays.binarySearch(keys, 0, size, value >>> 16);
+        return index >= 0 && containers[index].contains(value & 0xFFFF);
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality > 0) {
+                    result.appendContainer(keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public int andCardinality(CompressedBitmap other) {
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                count += containers[i].andCardinality(other.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    public CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || i < size && keys[i] < other.keys[j]) {
+                result.appendContainer(keys[i], containers[i].copy());
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.appendContainer(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.appendContainer(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    public int[] toArray() {
+        int[] values = new int[cardinality];
+        int[] position = {0};
+        forEach(value -> values[position[0]++] = value);
+        return values;
+    }
+
+    /**
+     * Приблизительный объём данных множества в байтах, без учёта заголовков объектов.
+     */
+    public long getSizeInBytes() {
+        long bytes = keys.length * 4L + containers.length * 8L;
+        for (int i = 0; i < size; i++) {
+            Container container = containers[i];
+            bytes += container.words != null ? container.words.length * 8L : container.values.length * 2L;
+        }
+        return bytes;
+    }
+
+    private void insertContainer(int index, int high, Container container) {
+        if (size == keys.length) {
+            int capacity = Math.max(4, size * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = high;
+        containers[index] = container;
+        size++;
+    }
+
+    private void appendContainer(int high, Container container) {
+        insertContainer(size, high, container);
+        cardinality += container.cardinality;
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+        size--;
+        containers[size] = null;
+    }
+
+    /**
+     * Младшие 16 бит чисел одной группы: отсортированный массив либо битовая карта.
+     */
+    private static final class Container {
+        private short[] values;
+        private long[] words;
+        private int cardinality;
+
+        private Container() {
+            this.values = new short[4];
+        }
+
+        private Container(short[] values, long[] words, int cardinality) {
+            this.values = values;
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        private boolean contains(int low) {
+            if (words != null) {
+                return (words[low >>> 6] & (1L << low)) != 0;
+            }
+            return indexOf(values, cardinality, low) >= 0;
+        }
+
+        private boolean add(int low) {
+            if (words != null) {
+                long before = words[low >>> 6];
+                words[low >>> 6] = before | (1L << low);
+                if (before == words[low >>> 6]) {
+                    return false;
+                }
+                cardinality++;
+                return true;
+            }
+            int index = indexOf(values, cardinality, low);
+            if (index >= 0) {
+                return false;
+            }
+            if (cardinality == ARRAY_MAX_SIZE) {
+                toBitmap();
+                return add(low);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX_SIZE, cardinality * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = (short) low;
+            cardinality++;
+            return true;
+        }
+
+        private boolean remove(int low) {
+            if (words != null) {
+                long before = words[low >>> 6];
+                words[low >>> 6] = before & ~(1L << low);
+                if (before == words[low >>> 6]) {
+                    return false;
+                }
+                cardinality--;
+                if (cardinality <= ARRAY_MAX_SIZE) {
+                    toArray();
+                }
+                return true;
+            }
+            int index = indexOf(values, cardinality, low);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+            cardinality--;
+            return true;
+        }
+
+        private int andCardinality(Container other) {
+            if (words != null && other.words != null) {
+                int count = 0;
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    count += Long.bitCount(words[i] & other.words[i]);
+                }
+                return count;
+            }
+            if (words != null || other.words != null) {
+                Container array = words == null ? this : other;
+                Container bitmap = words == null ? other : this;
+                int count = 0;
+                for (int i = 0; i < array.cardinality; i++) {
+                    if (bitmap.contains(Short.toUnsignedInt(array.values[i]))) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality && j < other.cardinality) {
+                int compare = Short.compareUnsigned(values[i], other.values[j]);
+                if (compare == 0) {
+                    count++;
+                }
+                if (compare <= 0) {
+                    i++;
+                }
+                if (compare >= 0) {
+                    j++;
+                }
+            }
+            return count;
+        }
+
+        private Container and(Container other) {
+            if (words != null && other.words != null) {
+                long[] result = new long[BITMAP_WORDS];
+                int count = 0;
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    result[i] = words[i] & other.words[i];
+                    count += Long.bitCount(result[i]);
+                }
+                Container container = new Container(null, result, count);
+                if (count <= ARRAY_MAX_SIZE) {
+                    container.toArray();
+                }
+                return container;
+            }
+            Container array = words == null ? this : other;
+            Container second = words == null ? other : this;
+            short[] result = new short[Math.min(array.cardinality, second.cardinality)];
+            int count = 0;
+            for (int i = 0; i < array.cardinality; i++) {
+                if (second.contains(Short.toUnsignedInt(array.values[i]))) {
+                    result[count++] = array.values[i];
+                }
+            }
+            return new Container(result, null, count);
+        }
+
+        private Container or(Container other) {
+            Container result;
+            if (words != null || other.words != null) {
+                Container bitmap = words != null ? this : other;
+                Container second = words != null ? other : this;
+                result = bitmap.copy();
+                second.forEach(0, result::add);
+                return result;
+            }
+            short[] merged = new short[cardinality + other.cardinality];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality || j < other.cardinality) {
+                int compare = i == cardinality ? 1 : j == other.cardinality ? -1
+                        : Short.compareUnsigned(values[i], other.values[j]);
+                merged[count++] = compare <= 0 ? values[i] : other.values[j];
+                if (compare <= 0) {
+                    i++;
+                }
+                if (compare >= 0) {
+                    j++;
+                }
+            }
+            result = new Container(merged, null, count);
+            if (count > ARRAY_MAX_SIZE) {
+                result.toBitmap();
+            }
+            return result;
+        }
+
+        private void forEach(int base, IntConsumer action) {
+            if (words == null) {
+                for (int i = 0; i < cardinality; i++) {
+                    action.accept(base | Short.toUnsignedInt(values[i]));
+                }
+                return;
+            }
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    action.accept(base | (i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        private Container copy() {
+            return new Container(values == null ? null : Arrays.copyOf(values, Math.max(1, cardinality)),
+                    words == null ? null : words.clone(), cardinality);
+        }
+
+        private void toBitmap() {
+            long[] bitmap = new long[BITMAP_WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                int low = Short.toUnsignedInt(values[i]);
+                bitmap[low >>> 6] |= 1L << low;
+            }
+            words = bitmap;
+            values = null;
+        }
+
+        private void toArray() {
+            short[] array = new short[Math.max(1, cardinality)];
+            int[] count = {0};
+            forEach(0, low -> array[count[0]++] = (short) low);
+            values = array;
+            words = null;
+        }
+
+        private static int indexOf(short[] values, int length, int low) {
+            int from = 0;
+            int to = length - 1;
+            while (from <= to) {
+                int middle = (from + to) >>> 1;
+                int value = Short.toUnsignedInt(values[middle]);
+                if (value < low) {
+                    from = middle + 1;
+                } else if (value > low) {
+                    to = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(from + 1);
+        }
+    }
+}
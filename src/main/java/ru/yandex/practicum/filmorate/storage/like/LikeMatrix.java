@@ -0,0 +1,225 @@
+package ru.yandex.practicum.filmorate.storage.like;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Матрица лайков пользователь x фильм, которая держится в памяти в виде сжатых битовых множеств:
+ * для каждого пользователя - множество понравившихся фильмов, для каждого фильма - множество
+ * лайкнувших пользователей. Используется для рекомендаций: похожие пользователи ищутся
+ * по коэффициенту Жаккара, непросмотренные фильмы ранжируются по сумме сходства соседей,
+ * которые их лайкнули.
+ */
+@Component
+@Slf4j
+public class LikeMatrix {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, CompressedBitmap> filmsByUser = new HashMap<>();
+    private final Map<Integer, CompressedBitmap> usersByFilm = new HashMap<>();
+
+    public LikeMatrix(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        Map<Integer, CompressedBitmap> loadedByUser = new HashMap<>();
+        Map<Integer, CompressedBitmap> loadedByFilm = new HashMap<>();
+        jdbcTemplate.query("SELECT user_id, film_id FROM film_likes", rs -> {
+            int userId = rs.getInt("user_id");
+            int filmId = rs.getInt("film_id");
+            loadedByUser.computeIfAbsent(userId, id -> new CompressedBitmap()).add(filmId);
+            loadedByFilm.computeIfAbsent(filmId, id -> new CompressedBitmap()).add(userId);
+        });
+
+        lock.writeLock().lock();
+        try {
+            filmsByUser.clear();
+            filmsByUser.putAll(loadedByUser);
+            usersByFilm.clear();
+            usersByFilm.putAll(loadedByFilm);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        long bytes = sizeInBytes(loadedByUser) + sizeInBytes(loadedByFilm);
+        log.debug("Матрица лайков построена, пользователей - {}, фильмов - {}, объём - {} КБ",
+                loadedByUser.size(), loadedByFilm.size(), bytes / 1024);
+    }
+
+    public boolean addLike(int filmId, int userId) {
+        lock.writeLock().lock();
+        try {
+            if (!filmsByUser.computeIfAbsent(userId, id -> new CompressedBitmap()).add(filmId)) {
+                return false;
+            }
+            usersByFilm.computeIfAbsent(filmId, id -> new CompressedBitmap()).add(userId);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean removeLike(int filmId, int userId) {
+        lock.writeLock().lock();
+        try {
+            if (!removeFrom(filmsByUser, userId, filmId)) {
+                return false;
+            }
+            removeFrom(usersByFilm, filmId, userId);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeUser(int userId) {
+        lock.writeLock().lock();
+        try {
+            CompressedBitmap films = filmsByUser.remove(userId);
+            if (films != null) {
+                films.forEach(filmId -> removeFrom(usersByFilm, filmId, userId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(int filmId) {
+        lock.writeLock().lock();
+        try {
+            CompressedBitmap users = usersByFilm.remove(filmId);
+            if (users != null) {
+                users.forEach(userId -> removeFrom(filmsByUser, userId, filmId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int getLikesCount(int filmId) {
+        lock.readLock().lock();
+        try {
+            CompressedBitmap users = usersByFilm.get(filmId);
+            return users == null ? 0 : users.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает ID фильмов, которые понравились обоим пользователям, по убыванию количества лайков.
+     */
+    public List<Integer> getCommonFilmIds(int userId, int friendId) {
+        lock.readLock().lock();
+        try {
+            CompressedBitmap userFilms = filmsByUser.get(userId);
+            CompressedBitmap friendFilms = filmsByUser.get(friendId);
+            if (userFilms == null || friendFilms == null) {
+                return Collections.emptyList();
+            }
+            return Arrays.stream(userFilms.and(friendFilms).toArray()).boxed()
+                    .sorted(Comparator.comparingInt((Integer filmId) -> usersByFilm.get(filmId).cardinality())
+                            .reversed()
+                            .thenComparing(Comparator.naturalOrder()))
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает ID фильмов, которые пользователь ещё не лайкал, в порядке убывания оценки.
+     * Оценка фильма - сумма сходства тех из {@code neighbours} ближайших соседей, кому он понравился.
+     * Кандидаты в соседи и число общих лайков берутся из множеств лайкнувших пользователей
+     * по фильмам самого пользователя, поэтому пользователи без общих лайков не просматриваются.
+     * Счётчики общих лайков хранятся только для кандидатов, а не для всех пользователей.
+     */
+    public List<Integer> recommendFilmIds(int userId, int neighbours) {
+        lock.readLock().lock();
+        try {
+            CompressedBitmap userFilms = filmsByUser.get(userId);
+            if (userFilms == null) {
+                return Collections.emptyList();
+            }
+            long[] filmLikes = {0};
+            userFilms.forEach(filmId -> filmLikes[0] += usersByFilm.get(filmId).cardinality());
+            int expectedCandidates = (int) Math.min(filmsByUser.size(), filmLikes[0]);
+            Map<Integer, int[]> commonLikes = new HashMap<>(expectedCandidates * 4 / 3 + 1);
+            userFilms.forEach(filmId -> usersByFilm.get(filmId).forEach(otherUserId -> {
+                if (otherUserId != userId) {
+                    commonLikes.computeIfAbsent(otherUserId, id -> new int[1])[0]++;
+                }
+            }));
+            int userLikes = userFilms.cardinality();
+            PriorityQueue<Neighbour> nearest = new PriorityQueue<>(Comparator.reverseOrder());
+            for (Map.Entry<Integer, int[]> candidate : commonLikes.entrySet()) {
+                int otherUserId = candidate.getKey();
+                nearest.add(new Neighbour(otherUserId, jaccard(candidate.getValue()[0], userLikes,
+                        filmsByUser.get(otherUserId).cardinality())));
+                if (nearest.size() > neighbours) {
+                    nearest.poll();
+                }
+            }
+
+            Map<Integer, Double> scores = new HashMap<>();
+            for (Neighbour neighbour : nearest) {
+                filmsByUser.get(neighbour.userId).forEach(filmId -> {
+                    if (!userFilms.contains(filmId)) {
+                        scores.merge(filmId, neighbour.similarity, Double::sum);
+                    }
+                });
+            }
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed()
+                            .thenComparing(Map.Entry.comparingByKey()))
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static double jaccard(int common, int firstCount, int secondCount) {
+        return (double) common / (firstCount + secondCount - common);
+    }
+
+    private static boolean removeFrom(Map<Integer, CompressedBitmap> bitmaps, int key, int value) {
+        CompressedBitmap bitmap = bitmaps.get(key);
+        if (bitmap == null || !bitmap.remove(value)) {
+            return false;
+        }
+        if (bitmap.isEmpty()) {
+            bitmaps.remove(key);
+        }
+        return true;
+    }
+
+    private static long sizeInBytes(Map<Integer, CompressedBitmap> bitmaps) {
+        return bitmaps.values().stream().mapToLong(CompressedBitmap::getSizeInBytes).sum();
+    }
+
+    private static final class Neighbour implements Comparable<Neighbour> {
+        private final int userId;
+        private final double similarity;
+
+        private Neighbour(int userId, double similarity) {
+            this.userId = userId;
+            this.similarity = similarity;
+        }
+
+        @Override
+        public int compareTo(Neighbour other) {
+            int bySimilarity = Double.compare(other.similarity, similarity);
+            return bySimilarity != 0 ? bySimilarity : Integer.compare(userId, other.userId);
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package ru.yandex.practicum.filmorate.storage.mpa;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.CacheStats;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.cache.CacheStatsSource;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceDataCache;
 
+import javax.annotation.PostConstruct;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
@@ -13,31 +16,41 @@ import java.util.Optional;
 
 @Component
 @Slf4j
-public class MpaDBStorage implements MpaStorage {
+public class MpaDBStorage implements MpaStorage, CacheStatsSource {
 
     private final JdbcTemplate jdbcTemplate;
+    private final ReferenceDataCache<Mpa> cache = new ReferenceDataCache<>("mpa", Mpa::getId);
 
     public MpaDBStorage(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
     }
 
+    @PostConstruct
+    public void reloadCache() {
+        cache.reload(jdbcTemplate.query("SELECT * FROM mpa", (rs, rowNum) -> makeMpa(rs)));
+        log.debug("Справочник mpa загружен в кэш");
+    }
+
     @Override
     public Optional<Mpa> getMpa(int mpaId) {
-        String sqlMpa = "SELECT * FROM mpa WHERE mpa_id = ?";
-        try {
-            Mpa mpa = jdbcTemplate.queryForObject(sqlMpa, (rs, rowNum) -> makeMpa(rs), mpaId);
-            log.debug("Mpa с указанным ID = {} найден", mpaId);
-            return Optional.ofNullable(mpa);
-        } catch (DataAccessException e) {
-            log.debug("Mpa с указанным ID = {} не найден", mpaId);
-            return Optional.empty();
-        }
+        return cache.get(mpaId, this::loadMpa);
     }
 
     @Override
     public List<Mpa> getAllMpa() {
-        String sqlMpa = "SELECT * FROM mpa";
-        return jdbcTemplate.query(sqlMpa, (rs, rowNum) -> makeMpa(rs));
+        return cache.getAll();
+    }
+
+    @Override
+    public CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    private Optional<Mpa> loadMpa(int mpaId) {
+        String sqlMpa = "SELECT * FROM mpa WHERE mpa_id = ?";
+        Optional<Mpa> mpa = jdbcTemplate.query(sqlMpa, (rs, rowNum) -> makeMpa(rs), mpaId).stream().findFirst();
+        log.debug("Mpa с указанным ID = {} {}", mpaId, mpa.isPresent() ? "найден" : "не найден");
+        return mpa;
     }
 
     private Mpa makeMpa(ResultSet rs) throws SQLException {
@@ -1,17 +1,17 @@
 package ru.yandex.practicum.filmorate.storage.review;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Component;
-import ru.yandex.practicum.filmorate.constants.MyConstants;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.OperationType;
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.storage.feed.FeedStorage;
+import ru.yandex.practicum.filmorate.storage.statement.StatementRegistry;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,10 +21,14 @@ import java.util.Optional;
 @Slf4j
 public class ReviewDBStorage implements ReviewStorage {
     private final JdbcTemplate jdbcTemplate;
+    private final FeedStorage feedStorage;
+    private final StatementRegistry statements;
     private static final String WRONG_REVIEW_ID = "Отзыв с указанным ID не найден";
 
-    public ReviewDBStorage(JdbcTemplate jdbcTemplate) {
+    public ReviewDBStorage(JdbcTemplate jdbcTemplate, FeedStorage feedStorage, StatementRegistry statements) {
         this.jdbcTemplate = jdbcTemplate;
+        this.feedStorage = feedStorage;
+        this.statements = statements;
     }
 
     @Override
@@ -36,13 +40,9 @@ public class ReviewDBStorage implements ReviewStorage {
         values.put("is_positive", review.getIsPositive());
         values.put("useful", 0);
 
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("reviews")
-                .usingGeneratedKeyColumns("review_id");
-        int reviewId = simpleJdbcInsert.executeAndReturnKey(values).intValue();
+        int reviewId = statements.insert("reviews", "review_id").executeAndReturnKey(values).intValue();
 
-        jdbcTemplate.update(MyConstants.SQLFEEDREVIEW, review.getUserId(), reviewId, 3, 2, 2,
-                LocalDateTime.now());
+        feedStorage.addFeed(review.getUserId(), reviewId, EventType.REVIEW, OperationType.ADD);
         log.info("Отзыв успешно создан с ID - {}", reviewId);
         review.setReviewId(reviewId);
         return review;
@@ -56,8 +56,8 @@ public class ReviewDBStorage implements ReviewStorage {
                 "SET review_body = ?, is_positive = ? WHERE review_id = ?";
 
         jdbcTemplate.update(sqlUpdateReview, review.getContent(), review.getIsPositive(), reviewId);
-        jdbcTemplate.update(MyConstants.SQLFEEDREVIEW, reviewOld.getUserId(), reviewOld.getReviewId(), 3, 2, 3,
-                LocalDateTime.now());
+        feedStorage.addFeed(reviewOld.getUserId(), reviewOld.getReviewId(), EventType.REVIEW,
+                OperationType.UPDATE);
 
         log.info("Отзыв успешно обновлен по указанном ID = {}", reviewId);
 
@@ -70,22 +70,26 @@ public class ReviewDBStorage implements ReviewStorage {
         String sqlReview = "SELECT * " +
                 "FROM reviews " +
                 "WHERE review_id = ? ";
-        try {
-            Review review = jdbcTemplate.queryForObject(sqlReview, this::makeReview, id);
-            log.info("Отзыв с указанным ID = {} найден", id);
-            return Optional.of(review);
-        } catch (DataAccessException e) {
-            log.info("Отзыв с указанным ID = {} не найден", id);
-            return Optional.empty();
-        }
+        Optional<Review> review = jdbcTemplate.query(sqlReview, this::makeReview, id).stream().findFirst();
+        log.info("Отзыв с указанным ID = {} {}", id, review.isPresent() ? "найден" : "не найден");
+        return review;
     }
 
     @Override
-    public List<Review> getAllReviews() {
-        String sqlReviews = "SELECT * " +
+    public List<Review> getReviewsPage(Integer afterUseful, Integer afterId, int limit) {
+        if (afterId == null) {
+            String sqlReviews = "SELECT * " +
+                    "FROM reviews " +
+                    "ORDER BY useful DESC, review_id " +
+                    "LIMIT ?";
+            return jdbcTemplate.query(sqlReviews, this::makeReview, limit);
+        }
+        String sqlReviewsAfter = "SELECT * " +
                 "FROM reviews " +
-                "ORDER BY useful DESC";
-        return jdbcTemplate.query(sqlReviews, this::makeReview);
+                "WHERE useful <= ? AND (useful < ? OR review_id > ?) " +
+                "ORDER BY useful DESC, review_id " +
+                "LIMIT ?";
+        return jdbcTemplate.query(sqlReviewsAfter, this::makeReview, afterUseful, afterUseful, afterId, limit);
     }
 
     @Override
@@ -94,13 +98,13 @@ public class ReviewDBStorage implements ReviewStorage {
             String sqlReviewsByFilm = "SELECT * " +
                     "FROM reviews " +
                     "WHERE film_id = ? " +
-                    "ORDER BY useful DESC " +
+                    "ORDER BY useful DESC, review_id " +
                     "LIMIT ?";
             return jdbcTemplate.query(sqlReviewsByFilm, this::makeReview, filmId.get(), count.get());
         } else {
             String sqlReviewsByFilm = "SELECT * " +
                     "FROM reviews " +
-                    "ORDER BY useful DESC " +
+                    "ORDER BY useful DESC, review_id " +
                     "LIMIT ?";
             return jdbcTemplate.query(sqlReviewsByFilm, this::makeReview, count.get());
         }
@@ -108,34 +112,23 @@ public class ReviewDBStorage implements ReviewStorage {
     }
 
     private Review makeReview(ResultSet rs, int rowNum) throws SQLException {
-        int reviewId = rs.getInt("review_id");
-        try {
-            return new Review(
-                    reviewId,
-                    rs.getInt("film_id"),
-                    rs.getInt("user_id"),
-                    rs.getString("review_body"),
-                    rs.getBoolean("is_positive"),
-                    rs.getInt("useful"));
-        } catch (DataAccessException e) {
-            throw new EntityNotFoundException(WRONG_REVIEW_ID);
-        }
+        return new Review(
+                rs.getInt("review_id"),
+                rs.getInt("film_id"),
+                rs.getInt("user_id"),
+                rs.getString("review_body"),
+                rs.getBoolean("is_positive"),
+                rs.getInt("useful"));
     }
 
     @Override
     public void deleteReview(int reviewId) {
-        try {
-            Review review = getReview(reviewId).get();
-            jdbcTemplate.update(MyConstants.SQLFEEDREVIEW, review.getUserId(), reviewId, 3, 2, 1,
-                    LocalDateTime.now());
-            String sqlQuery = "DELETE " +
-                    "FROM reviews " +
-                    "WHERE review_id = ?";
-            jdbcTemplate.update(sqlQuery, reviewId);
-        } catch (DataAccessException e) {
-            throw new EntityNotFoundException(WRONG_REVIEW_ID);
-        }
-
+        Review review = getReview(reviewId).orElseThrow(() -> new EntityNotFoundException(WRONG_REVIEW_ID));
+        feedStorage.addFeed(review.getUserId(), reviewId, EventType.REVIEW, OperationType.REMOVE);
+        String sqlQuery = "DELETE " +
+                "FROM reviews " +
+                "WHERE review_id = ?";
+        jdbcTemplate.update(sqlQuery, reviewId);
     }
 
     @Override
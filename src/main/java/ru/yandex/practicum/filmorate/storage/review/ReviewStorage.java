@@ -10,7 +10,7 @@ public interface ReviewStorage {
 
     Optional<Review> getReview(Integer id);
 
-    List<Review> getAllReviews();
+    List<Review> getReviewsPage(Integer afterUseful, Integer afterId, int limit);
 
     Review updateReview(Review review);
 
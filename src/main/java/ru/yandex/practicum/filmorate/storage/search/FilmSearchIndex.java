@@ -0,0 +1,241 @@
+package ru.yandex.practicum.filmorate.storage.search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.film.FilmPopularityIndex;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Инвертированный индекс по триграммам названий фильмов и имён режиссёров.
+ * Поиск сохраняет семантику LIKE '%query%' без учёта регистра: кандидаты отбираются
+ * пересечением списков триграмм запроса и затем проверяются на вхождение подстроки.
+ * Запросы короче триграммы проверяются перебором строк в памяти.
+ */
+@Component
+@Slf4j
+public class FilmSearchIndex {
+
+    private static final int GRAM_LENGTH = 3;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FilmPopularityIndex popularityIndex;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, String> filmTitles = new HashMap<>();
+    private final Map<Integer, Set<Integer>> filmDirectors = new HashMap<>();
+    private final Map<Integer, String> directorNames = new HashMap<>();
+    private final Map<Integer, Set<Integer>> directorFilms = new HashMap<>();
+    private final Map<String, Set<Integer>> titleGrams = new HashMap<>();
+    private final Map<String, Set<Integer>> directorGrams = new HashMap<>();
+
+    public FilmSearchIndex(JdbcTemplate jdbcTemplate, FilmPopularityIndex popularityIndex) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.popularityIndex = popularityIndex;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            filmTitles.clear();
+            filmDirectors.clear();
+            directorNames.clear();
+            directorFilms.clear();
+            titleGrams.clear();
+            directorGrams.clear();
+            jdbcTemplate.query("SELECT film_id, name FROM films", rs -> {
+                indexTitle(rs.getInt("film_id"), rs.getString("name"));
+            });
+            jdbcTemplate.query("SELECT director_id, name FROM directors", rs -> {
+                indexDirectorName(rs.getInt("director_id"), rs.getString("name"));
+            });
+            jdbcTemplate.query("SELECT film_id, director_id FROM film_directors", rs -> {
+                linkDirector(rs.getInt("film_id"), rs.getInt("director_id"));
+            });
+            log.debug("Поисковый индекс построен, фильмов - {}, режиссёров - {}",
+                    filmTitles.size(), directorNames.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putFilm(Film film) {
+        lock.writeLock().lock();
+        try {
+            unindexFilm(film.getId());
+            indexTitle(film.getId(), film.getName());
+            if (film.getDirectors() != null) {
+                for (Director director : film.getDirectors()) {
+                    if (!directorNames.containsKey(director.getId()) && director.getName() != null) {
+                        indexDirectorName(director.getId(), director.getName());
+                    }
+                    linkDirector(film.getId(), director.getId());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(int filmId) {
+        lock.writeLock().lock();
+        try {
+            unindexFilm(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putDirector(Director director) {
+        lock.writeLock().lock();
+        try {
+            unindexDirectorName(director.getId());
+            indexDirectorName(director.getId(), director.getName());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeDirector(int directorId) {
+        lock.writeLock().lock();
+        try {
+            unindexDirectorName(directorId);
+            Set<Integer> films = directorFilms.remove(directorId);
+            if (films != null) {
+                for (Integer filmId : films) {
+                    Set<Integer> directors = filmDirectors.get(filmId);
+                    if (directors != null) {
+                        directors.remove(directorId);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Integer> search(String query, boolean byTitle, boolean byDirector, int offset, int limit) {
+        String normalizedQuery = normalize(query);
+        Set<Integer> found = new HashSet<>();
+        lock.readLock().lock();
+        try {
+            if (byTitle) {
+                found.addAll(match(normalizedQuery, titleGrams, filmTitles));
+            }
+            if (byDirector) {
+                for (Integer directorId : match(normalizedQuery, directorGrams, directorNames)) {
+                    found.addAll(directorFilms.getOrDefault(directorId, Collections.emptySet()));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return found.stream()
+                .map(filmId -> new int[]{filmId, popularityIndex.getLikesCount(filmId)})
+                .sorted(Comparator.comparingInt((int[] film) -> film[1]).reversed()
+                        .thenComparingInt(film -> film[0]))
+                .skip(offset)
+                .limit(limit)
+                .map(film -> film[0])
+                .collect(Collectors.toList());
+    }
+
+    private Set<Integer> match(String query, Map<String, Set<Integer>> grams, Map<Integer, String> texts) {
+        if (query.length() < GRAM_LENGTH) {
+            return texts.entrySet().stream()
+                    .filter(text -> text.getValue().contains(query))
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toSet());
+        }
+        List<Set<Integer>> postings = new ArrayList<>();
+        for (String gram : grams(query)) {
+            Set<Integer> posting = grams.get(gram);
+            if (posting == null) {
+                return Collections.emptySet();
+            }
+            postings.add(posting);
+        }
+        postings.sort(Comparator.comparingInt(Set::size));
+        Set<Integer> candidates = new HashSet<>(postings.get(0));
+        for (int i = 1; i < postings.size() && !candidates.isEmpty(); i++) {
+            candidates.retainAll(postings.get(i));
+        }
+        candidates.removeIf(id -> !texts.get(id).contains(query));
+        return candidates;
+    }
+
+    private void indexTitle(int filmId, String title) {
+        String normalizedTitle = normalize(title);
+        filmTitles.put(filmId, normalizedTitle);
+        for (String gram : grams(normalizedTitle)) {
+            titleGrams.computeIfAbsent(gram, key -> new HashSet<>()).add(filmId);
+        }
+    }
+
+    private void unindexFilm(int filmId) {
+        String title = filmTitles.remove(filmId);
+        if (title != null) {
+            removePostings(titleGrams, title, filmId);
+        }
+        Set<Integer> directors = filmDirectors.remove(filmId);
+        if (directors != null) {
+            for (Integer directorId : directors) {
+                Set<Integer> films = directorFilms.get(directorId);
+                if (films != null) {
+                    films.remove(filmId);
+                }
+            }
+        }
+    }
+
+    private void indexDirectorName(int directorId, String name) {
+        String normalizedName = normalize(name);
+        directorNames.put(directorId, normalizedName);
+        for (String gram : grams(normalizedName)) {
+            directorGrams.computeIfAbsent(gram, key -> new HashSet<>()).add(directorId);
+        }
+    }
+
+    private void unindexDirectorName(int directorId) {
+        String name = directorNames.remove(directorId);
+        if (name != null) {
+            removePostings(directorGrams, name, directorId);
+        }
+    }
+
+    private void linkDirector(int filmId, int directorId) {
+        filmDirectors.computeIfAbsent(filmId, id -> new HashSet<>()).add(directorId);
+        directorFilms.computeIfAbsent(directorId, id -> new HashSet<>()).add(filmId);
+    }
+
+    private static void removePostings(Map<String, Set<Integer>> grams, String text, int id) {
+        for (String gram : grams(text)) {
+            Set<Integer> posting = grams.get(gram);
+            if (posting != null) {
+                posting.remove(id);
+                if (posting.isEmpty()) {
+                    grams.remove(gram);
+                }
+            }
+        }
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+}
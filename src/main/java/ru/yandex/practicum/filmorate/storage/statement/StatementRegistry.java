@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.storage.statement;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.storage.cache.CacheStatsSource;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Общий для хранилищ реестр запросов. Вставки с получением сгенерированного ключа компилируются
+ * один раз (метаданные таблицы читаются при первом обращении), запросы переменной формы собираются
+ * один раз на каждую форму, так что одинаковые запросы всегда имеют одинаковый текст и попадают
+ * в кэш разобранных запросов драйвера.
+ */
+@Component
+@Slf4j
+public class StatementRegistry implements CacheStatsSource {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, SimpleJdbcInsert> inserts = new ConcurrentHashMap<>();
+    private final Map<String, String> statements = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public StatementRegistry(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Возвращает скомпилированную вставку в таблицу, возвращающую значение ключевой колонки.
+     */
+    public SimpleJdbcInsert insert(String table, String keyColumn) {
+        SimpleJdbcInsert insert = inserts.get(table);
+        if (insert != null) {
+            hits.increment();
+            return insert;
+        }
+        return inserts.computeIfAbsent(table, name -> {
+            misses.increment();
+            SimpleJdbcInsert compiled = new SimpleJdbcInsert(jdbcTemplate).withTableName(name)
+                    .usingGeneratedKeyColumns(keyColumn);
+            compiled.compile();
+            log.debug("Скомпилирована вставка в таблицу {}", name);
+            return compiled;
+        });
+    }
+
+    /**
+     * Возвращает текст запроса формы {@code shape}, при первом обращении собирая его {@code builder}.
+     */
+    public String statement(String shape, Supplier<String> builder) {
+        String sql = statements.get(shape);
+        if (sql != null) {
+            hits.increment();
+            return sql;
+        }
+        return statements.computeIfAbsent(shape, name -> {
+            misses.increment();
+            return builder.get();
+        });
+    }
+
+    @Override
+    public CacheStats getCacheStats() {
+        return new CacheStats("statements", inserts.size() + statements.size(), hits.sum(), misses.sum(), 0);
+    }
+}
@@ -0,0 +1,60 @@
+package ru.yandex.practicum.filmorate.storage.transaction;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Побочные действия вне БД (изменения структур в памяти, постановка в асинхронную очередь), которые
+ * выполняются только после фиксации транзакции. Вне транзакции действие выполняется сразу.
+ * Действия операции, выполняемой в точке сохранения группы {@link UnitOfWork}, отбрасываются при
+ * откате её точки сохранения и передаются общей транзакции группы при успехе.
+ */
+public final class TransactionEvents {
+
+    private static final ThreadLocal<List<Runnable>> SCOPE = new ThreadLocal<>();
+
+    private TransactionEvents() {
+    }
+
+    public static void afterCommit(Runnable action) {
+        List<Runnable> scope = SCOPE.get();
+        if (scope != null) {
+            scope.add(action);
+        } else if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Выполняет {@code work}, собирая отложенные им действия. Если {@code work} завершился ошибкой,
+     * собранные действия отбрасываются.
+     */
+    static <T> T scoped(Supplier<T> work) {
+        List<Runnable> previous = SCOPE.get();
+        List<Runnable> actions = new ArrayList<>();
+        SCOPE.set(actions);
+        T result;
+        try {
+            result = work.get();
+        } finally {
+            if (previous == null) {
+                SCOPE.remove();
+            } else {
+                SCOPE.set(previous);
+            }
+        }
+        actions.forEach(TransactionEvents::afterCommit);
+        return result;
+    }
+}
@@ -0,0 +1,181 @@
+package ru.yandex.practicum.filmorate.storage.transaction;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.WriterStats;
+import ru.yandex.practicum.filmorate.storage.writer.WriterStatsSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Выполняет операцию сервиса одной транзакцией со всеми её запросами к БД. В режиме группового
+ * фиксирования операции параллельных запросов объединяются: поток, первым получивший блокировку,
+ * выполняет все ожидающие операции (до {@code maxGroupSize}) в одной транзакции, каждую - внутри
+ * своей точки сохранения, и фиксирует их одним COMMIT. Ошибка операции откатывает только её точку
+ * сохранения и возвращается вызвавшему её потоку. Если не удалась фиксация всей группы, операции
+ * повторяются по одной; побочные действия операций, отложенные через {@link TransactionEvents},
+ * выполняются только после успешной фиксации и поэтому не повторяются. Операция, вызванная внутри
+ * уже открытой транзакции, выполняется в ней.
+ */
+@Component
+@Slf4j
+public class UnitOfWork implements WriterStatsSource {
+
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate savepointTemplate;
+    private final boolean groupCommit;
+    private final int maxGroupSize;
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private final ConcurrentLinkedQueue<Pending<?>> pending = new ConcurrentLinkedQueue<>();
+    private final Object statsMonitor = new Object();
+    private long committed;
+    private long failed;
+    private long commits;
+    private long lastCommitMicros;
+    private long maxCommitMicros;
+    private long totalCommitMicros;
+
+    public UnitOfWork(PlatformTransactionManager transactionManager,
+                      @Value("${filmorate.unit-of-work.group-commit:false}") boolean groupCommit,
+                      @Value("${filmorate.unit-of-work.max-group-size:64}") int maxGroupSize) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.savepointTemplate = new TransactionTemplate(transactionManager);
+        this.savepointTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        this.groupCommit = groupCommit;
+        this.maxGroupSize = maxGroupSize;
+        log.debug("Групповое фиксирование транзакций {}", groupCommit ? "включено, группа - " + maxGroupSize
+                : "выключено");
+    }
+
+    public <T> T execute(Supplier<T> work) {
+        if (!groupCommit || TransactionSynchronizationManager.isActualTransactionActive()) {
+            long start = System.nanoTime();
+            try {
+                T result = transactionTemplate.execute(status -> work.get());
+                record(1, 0, start);
+                return result;
+            } catch (RuntimeException e) {
+                record(0, 1, start);
+                throw e;
+            }
+        }
+        Pending<T> unit = new Pending<>(work);
+        pending.add(unit);
+        commitLock.lock();
+        try {
+            while (!unit.done) {
+                commitGroup();
+            }
+        } finally {
+            commitLock.unlock();
+        }
+        return unit.get();
+    }
+
+    public void run(Runnable work) {
+        execute(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    @Override
+    public WriterStats getWriterStats() {
+        synchronized (statsMonitor) {
+            return new WriterStats("transactions", groupCommit, pending.size(), maxGroupSize, committed, failed,
+                    commits, lastCommitMicros, maxCommitMicros, commits == 0 ? 0 : totalCommitMicros / commits);
+        }
+    }
+
+    private void commitGroup() {
+        List<Pending<?>> group = new ArrayList<>();
+        Pending<?> next;
+        while (group.size() < maxGroupSize && (next = pending.poll()) != null) {
+            group.add(next);
+        }
+        long start = System.nanoTime();
+        try {
+            if (group.size() == 1) {
+                group.get(0).runIn(transactionTemplate);
+            } else {
+                transactionTemplate.executeWithoutResult(status ->
+                        group.forEach(unit -> unit.runInSavepoint(savepointTemplate)));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Группа из {} операций не зафиксирована, выполнение по одной: {}", group.size(), e.getMessage());
+            for (Pending<?> unit : group) {
+                if (unit.error == null) {
+                    unit.runIn(transactionTemplate);
+                }
+            }
+        }
+        int failedUnits = (int) group.stream().filter(unit -> unit.error != null).count();
+        group.forEach(unit -> unit.done = true);
+        record(group.size() - failedUnits, failedUnits, start);
+    }
+
+    private void record(int committedUnits, int failedUnits, long start) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        synchronized (statsMonitor) {
+            committed += committedUnits;
+            failed += failedUnits;
+            commits++;
+            lastCommitMicros = micros;
+            maxCommitMicros = Math.max(maxCommitMicros, micros);
+            totalCommitMicros += micros;
+        }
+    }
+
+    /**
+     * Операция, ожидающая фиксации. Поля изменяются и читаются под {@code commitLock}.
+     */
+    private static final class Pending<T> {
+        private final Supplier<T> work;
+        private T result;
+        private RuntimeException error;
+        private boolean done;
+
+        private Pending(Supplier<T> work) {
+            this.work = work;
+        }
+
+        private void runIn(TransactionTemplate template) {
+            try {
+                result = template.execute(status -> work.get());
+                error = null;
+            } catch (RuntimeException e) {
+                error = e;
+            }
+        }
+
+        /**
+         * Выполняет операцию в точке сохранения: её действия после фиксации ({@link TransactionEvents})
+         * достаются общей транзакции группы, только если точка сохранения не откачена.
+         */
+        private void runInSavepoint(TransactionTemplate template) {
+            try {
+                result = TransactionEvents.scoped(() -> template.execute(status -> work.get()));
+                error = null;
+            } catch (RuntimeException e) {
+                error = e;
+            }
+        }
+
+        private T get() {
+            if (error != null) {
+                throw error;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Граф дружбы, который держится в памяти: для каждого пользователя отсортированные массивы исходящих (кого он добавил в друзья) и входящих (кто добавил его) связей.
+ * Массивы не изменяются после создания, при изменении связи заменяются копией.
+ */
+@Component
+@Slf4j
+public class FriendGraph {
+
+    private static final int[] EMPTY = new int[0];
+    private static final int PARALLEL_FRIENDS_THRESHOLD = 1000;
+    private static final int PRECOMPUTED_SUGGESTIONS = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, int[]> friends = new HashMap<>();
+    private final Map<Integer, int[]> followers = new HashMap<>();
+    private final Map<Integer, int[]> heavyUserSuggestions = new ConcurrentHashMap<>();
+
+    public FriendGraph(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        Map<Integer, List<Integer>> loadedFriends = new HashMap<>();
+        Map<Integer, List<Integer>> loadedFollowers = new HashMap<>();
+        jdbcTemplate.query("SELECT user_id, friend_id FROM user_friend", rs -> {
+            int userId = rs.getInt("user_id");
+            int friendId = rs.getInt("friend_id");
+            loadedFriends.computeIfAbsent(userId, id -> new ArrayList<>()).add(friendId);
+            loadedFollowers.computeIfAbsent(friendId, id -> new ArrayList<>()).add(userId);
+        });
+
+        lock.writeLock().lock();
+        try {
+            heavyUserSuggestions.clear();
+            friends.clear();
+            loadedFriends.forEach((userId, ids) -> friends.put(userId, toSortedArray(ids)));
+            followers.clear();
+            loadedFollowers.forEach((userId, ids) -> followers.put(userId, toSortedArray(ids)));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Граф дружбы построен, пользователей с друзьями - {}", loadedFriends.size());
+    }
+
+    public void removeUser(int userId) {
+        lock.writeLock().lock();
+        try {
+            heavyUserSuggestions.clear();
+            for (int friendId : friends.getOrDefault(userId, EMPTY)) {
+                followers.computeIfPresent(friendId, (id, ids) -> without(ids, userId));
+            }
+            for (int followerId : followers.getOrDefault(userId, EMPTY)) {
+                friends.computeIfPresent(followerId, (id, ids) -> without(ids, userId));
+            }
+            friends.remove(userId);
+            followers.remove(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addFriend(int userId, int friendId) {
+        lock.writeLock().lock();
+        try {
+            heavyUserSuggestions.clear();
+            friends.compute(userId, (id, ids) -> with(ids, friendId));
+            followers.compute(friendId, (id, ids) -> with(ids, userId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFriend(int userId, int friendId) {
+        lock.writeLock().lock();
+        try {
+            heavyUserSuggestions.clear();
+            friends.computeIfPresent(userId, (id, ids) -> without(ids, friendId));
+            followers.computeIfPresent(friendId, (id, ids) -> without(ids, userId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isFriend(int userId, int friendId) {
+        return Arrays.binarySearch(getFriendIds(userId), friendId) >= 0;
+    }
+
+    /**
+     * Возвращает отсортированные ID тех, кого пользователь добавил в друзья. Массив нельзя изменять.
+     */
+    public int[] getFriendIds(int userId) {
+        lock.readLock().lock();
+        try {
+            return friends.getOrDefault(userId, EMPTY);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает отсортированные ID тех, кто добавил пользователя в друзья. Массив нельзя изменять.
+     */
+    public int[] getFollowerIds(int userId) {
+        lock.readLock().lock();
+        try {
+            return followers.getOrDefault(userId, EMPTY);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int[] getCommonFriendIds(int userId, int otherUserId) {
+        int[] first = getFriendIds(userId);
+        int[] second = getFriendIds(otherUserId);
+        int[] common = new int[Math.min(first.length, second.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                common[count++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(common, count);
+    }
+
+    /**
+     * Возвращает до {@code limit} ID друзей друзей пользователя, которых он ещё не добавил в друзья,
+     * по убыванию количества общих друзей, при равенстве - по возрастанию ID. Для пользователей
+     * с большим числом друзей обход выполняется параллельно, а результат запоминается до первого
+     * изменения графа.
+     */
+    public List<Integer> getFriendSuggestionIds(int userId, int limit) {
+        int[] precomputed = heavyUserSuggestions.get(userId);
+        if (precomputed != null && limit <= PRECOMPUTED_SUGGESTIONS) {
+            return toList(precomputed, limit);
+        }
+        lock.readLock().lock();
+        try {
+            int[] userFriends = friends.getOrDefault(userId, EMPTY);
+            if (userFriends.length < PARALLEL_FRIENDS_THRESHOLD) {
+                return toList(topSuggestions(countMutualFriends(userId, userFriends, 0, userFriends.length),
+                        limit), limit);
+            }
+            int chunks = (userFriends.length + PARALLEL_FRIENDS_THRESHOLD - 1) / PARALLEL_FRIENDS_THRESHOLD;
+            Map<Integer, Integer> mutualFriends = IntStream.range(0, chunks)
+                    .map(chunk -> chunk * PARALLEL_FRIENDS_THRESHOLD)
+                    .parallel()
+                    .mapToObj(from -> countMutualFriends(userId, userFriends, from,
+                            Math.min(userFriends.length, from + PARALLEL_FRIENDS_THRESHOLD)))
+                    .reduce(FriendGraph::mergeCounts)
+                    .orElseGet(HashMap::new);
+            int[] suggestions = topSuggestions(mutualFriends, Math.max(limit, PRECOMPUTED_SUGGESTIONS));
+            heavyUserSuggestions.put(userId, limit <= PRECOMPUTED_SUGGESTIONS ? suggestions
+                    : Arrays.copyOf(suggestions, Math.min(suggestions.length, PRECOMPUTED_SUGGESTIONS)));
+            return toList(suggestions, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<Integer, Integer> countMutualFriends(int userId, int[] userFriends, int from, int to) {
+        Map<Integer, Integer> mutualFriends = new HashMap<>();
+        for (int i = from; i < to; i++) {
+            for (int candidateId : friends.getOrDefault(userFriends[i], EMPTY)) {
+                if (candidateId != userId && Arrays.binarySearch(userFriends, candidateId) < 0) {
+                    mutualFriends.merge(candidateId, 1, Integer::sum);
+                }
+            }
+        }
+        return mutualFriends;
+    }
+
+    private static Map<Integer, Integer> mergeCounts(Map<Integer, Integer> first, Map<Integer, Integer> second) {
+        Map<Integer, Integer> larger = first.size() >= second.size() ? first : second;
+        Map<Integer, Integer> smaller = larger == first ? second : first;
+        smaller.forEach((id, count) -> larger.merge(id, count, Integer::sum));
+        return larger;
+    }
+
+    private static int[] topSuggestions(Map<Integer, Integer> mutualFriends, int limit) {
+        Comparator<Map.Entry<Integer, Integer>> byMutualFriends = Map.Entry.<Integer, Integer>comparingByValue()
+                .reversed()
+                .thenComparing(Map.Entry.comparingByKey());
+        PriorityQueue<Map.Entry<Integer, Integer>> top = new PriorityQueue<>(byMutualFriends.reversed());
+        for (Map.Entry<Integer, Integer> candidate : mutualFriends.entrySet()) {
+            top.add(candidate);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        int[] result = new int[top.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = top.poll().getKey();
+        }
+        return result;
+    }
+
+    private static List<Integer> toList(int[] ids, int limit) {
+        return Arrays.stream(ids).limit(limit).boxed().collect(Collectors.toList());
+    }
+
+    private static int[] with(int[] ids, int id) {
+        if (ids == null) {
+            return new int[]{id};
+        }
+        int index = Arrays.binarySearch(ids, id);
+        if (index >= 0) {
+            return ids;
+        }
+        index = -index - 1;
+        int[] result = new int[ids.length + 1];
+        System.arraycopy(ids, 0, result, 0, index);
+        result[index] = id;
+        System.arraycopy(ids, index, result, index + 1, ids.length - index);
+        return result;
+    }
+
+    private static int[] without(int[] ids, int id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index < 0) {
+            return ids;
+        }
+        if (ids.length == 1) {
+            return null;
+        }
+        int[] result = new int[ids.length - 1];
+        System.arraycopy(ids, 0, result, 0, index);
+        System.arraycopy(ids, index + 1, result, index, ids.length - index - 1);
+        return result;
+    }
+
+    private static int[] toSortedArray(List<Integer> ids) {
+        int[] result = ids.stream().mapToInt(Integer::intValue).toArray();
+        Arrays.sort(result);
+        return result;
+    }
+}
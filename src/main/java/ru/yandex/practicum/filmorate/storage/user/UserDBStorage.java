@@ -1,29 +1,53 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
-import ru.yandex.practicum.filmorate.constants.MyConstants;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.OperationType;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.feed.FeedStorage;
+import ru.yandex.practicum.filmorate.storage.feed.FeedTimelines;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+import ru.yandex.practicum.filmorate.storage.statement.StatementRegistry;
+import ru.yandex.practicum.filmorate.storage.transaction.TransactionEvents;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+/**
+ * Изменения графа дружбы и буферов лент применяются после фиксации транзакции, чтобы откат
+ * не оставлял в памяти связей и пользователей, которых нет в БД.
+ */
 @Component
 @Slf4j
 public class UserDBStorage implements UserStorage {
 
     private final JdbcTemplate jdbcTemplate;
-    private static final String WRONG_USER_ID = "Пользователь с указанным ID не найден";
+    private final FilmCache filmCache;
+    private final FriendGraph friendGraph;
+    private final FeedStorage feedStorage;
+    private final FeedTimelines feedTimelines;
+    private final StatementRegistry statements;
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final int USERS_CHUNK_SIZE = 1000;
 
-    public UserDBStorage(JdbcTemplate jdbcTemplate) {
+    public UserDBStorage(JdbcTemplate jdbcTemplate, FilmCache filmCache, FriendGraph friendGraph,
+                         FeedStorage feedStorage, FeedTimelines feedTimelines, StatementRegistry statements) {
         this.jdbcTemplate = jdbcTemplate;
+        this.filmCache = filmCache;
+        this.friendGraph = friendGraph;
+        this.feedStorage = feedStorage;
+        this.feedTimelines = feedTimelines;
+        this.statements = statements;
     }
 
     @Override
@@ -34,16 +58,49 @@ public class UserDBStorage implements UserStorage {
         values.put("name", user.getName());
         values.put("birthday", user.getBirthday());
 
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate).withTableName("users")
-                .usingGeneratedKeyColumns("user_id");
-
-        int userId = simpleJdbcInsert.executeAndReturnKey(values).intValue();
+        int userId = statements.insert("users", "user_id").executeAndReturnKey(values).intValue();
 
         log.debug("Пользователь успешно создан с ID = {}", userId);
         user.setId(userId);
         return user;
     }
 
+    /**
+     * Добавляет пользователей одной транзакцией пакетом JDBC, сгенерированные ID проставляются
+     * в переданные объекты.
+     */
+    @Override
+    @Transactional
+    public List<User> addUsers(List<User> users) {
+        if (users.isEmpty()) {
+            return users;
+        }
+        String sqlInsertUser = "INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?)";
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sqlInsertUser, new String[]{"user_id"})) {
+                for (User user : users) {
+                    ps.setString(1, user.getEmail());
+                    ps.setString(2, user.getLogin());
+                    ps.setString(3, user.getName());
+                    ps.setObject(4, user.getBirthday());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (User user : users) {
+                        if (!keys.next()) {
+                            throw new SQLException("Не получены ID добавленных пользователей");
+                        }
+                        user.setId(keys.getInt(1));
+                    }
+                }
+            }
+            return null;
+        });
+        log.debug("Добавлено пользователей - {}", users.size());
+        return users;
+    }
+
     @Override
     public User updateUser(User user) {
         String sqlForUpdateUser = "UPDATE users SET email = ?, login = ?, name = ?, birthday = ? WHERE user_id = ?";
@@ -55,92 +112,157 @@ public class UserDBStorage implements UserStorage {
     }
 
     @Override
-    public List<User> getAllUsers() {
-        return jdbcTemplate.query("SELECT * FROM users", this::makeUser);
+    public List<User> getUsersPage(Integer afterId, int limit) {
+        return jdbcTemplate.query("SELECT * FROM users WHERE user_id > ? ORDER BY user_id LIMIT ?", this::makeUser,
+                afterId == null ? 0 : afterId, limit);
+    }
+
+    @Override
+    public void forEachUser(Consumer<User> action) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement("SELECT * FROM users ORDER BY user_id",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            action.accept(makeUser(rs, rs.getRow()));
+        });
+    }
+
+    @Override
+    public List<User> getUsersByIds(List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Integer, User> userById = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += USERS_CHUNK_SIZE) {
+            Integer[] chunk = ids.subList(from, Math.min(ids.size(), from + USERS_CHUNK_SIZE)).toArray(new Integer[0]);
+            jdbcTemplate.query("SELECT * FROM users WHERE user_id = ANY(?)", this::makeUser, new Object[]{chunk})
+                    .forEach(user -> userById.put(user.getId(), user));
+        }
+        List<User> users = new ArrayList<>(userById.size());
+        for (Integer id : ids) {
+            User user = userById.get(id);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
     }
 
     @Override
     public Optional<User> getUser(int userId) {
         String sqlUser = "SELECT * FROM users WHERE user_id = ?";
-        try {
-            User user = jdbcTemplate.queryForObject(sqlUser, this::makeUser, userId);
-            log.debug("Пользователь с указанным ID = {} найден", userId);
-            return Optional.of(user);
-        } catch (DataAccessException e) {
-            log.debug("Пользователь с указанным ID = {} не найден", userId);
-            return Optional.empty();
+        Optional<User> user = jdbcTemplate.query(sqlUser, this::makeUser, userId).stream().findFirst();
+        log.debug("Пользователь с указанным ID = {} {}", userId, user.isPresent() ? "найден" : "не найден");
+        return user;
+    }
+
+    /**
+     * Проверка по индексу первичного ключа, как и для фильмов.
+     */
+    @Override
+    public boolean exists(int userId) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT EXISTS(SELECT 1 FROM users WHERE user_id = ?)",
+                Boolean.class, userId));
+    }
+
+    @Override
+    public boolean existsAll(Collection<Integer> userIds) {
+        List<Integer> distinctIds = new ArrayList<>(new HashSet<>(userIds));
+        int found = 0;
+        for (int from = 0; from < distinctIds.size(); from += USERS_CHUNK_SIZE) {
+            Integer[] chunk = distinctIds.subList(from, Math.min(distinctIds.size(), from + USERS_CHUNK_SIZE))
+                    .toArray(new Integer[0]);
+            found += jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users WHERE user_id = ANY(?)", Integer.class,
+                    (Object) chunk);
         }
+        return found == distinctIds.size();
     }
 
     @Override
     public void addFriend(Integer userId, Integer friendId) {
         String sqlAddFriend = "INSERT INTO user_friend (user_id, friend_id) VALUES (?,?)";
         jdbcTemplate.update(sqlAddFriend, userId, friendId);
-        jdbcTemplate.update(MyConstants.SQLFEEDUSER, userId, friendId, 1, 3, 2, LocalDateTime.now());
+        TransactionEvents.afterCommit(() -> friendGraph.addFriend(userId, friendId));
+        feedStorage.addFeed(userId, friendId, EventType.FRIEND, OperationType.ADD);
         log.debug("Пользователь {} успешно добавил в друзья {} ", userId, friendId);
     }
 
+    /**
+     * Добавляет связи одной транзакцией, уже существующие связи пропускаются. Без событий ленты
+     * сбрасываются буферы лент тех, у кого появились новые друзья.
+     */
+    @Override
+    @Transactional
+    public void addFriends(List<Friendship> friendships, boolean withFeed) {
+        if (friendships.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("MERGE INTO user_friend (user_id, friend_id) KEY (user_id, friend_id) VALUES (?,?)",
+                friendships.stream()
+                        .map(friendship -> new Object[]{friendship.getUserId(), friendship.getFriendId()})
+                        .collect(Collectors.toList()));
+        List<Friendship> added = List.copyOf(friendships);
+        TransactionEvents.afterCommit(() -> added.forEach(friendship ->
+                friendGraph.addFriend(friendship.getUserId(), friendship.getFriendId())));
+        if (withFeed) {
+            for (Friendship friendship : friendships) {
+                feedStorage.addFeed(friendship.getUserId(), friendship.getFriendId(), EventType.FRIEND,
+                        OperationType.ADD);
+            }
+        } else {
+            Set<Integer> userIds = friendships.stream().map(Friendship::getUserId).collect(Collectors.toSet());
+            TransactionEvents.afterCommit(() -> feedTimelines.invalidate(userIds));
+        }
+        log.debug("Добавлено связей дружбы - {}", friendships.size());
+    }
+
     @Override
     public void deleteFriend(Integer userId, Integer friendId) {
         String sqlDeleteFriend = "DELETE FROM user_friend WHERE user_id = ? AND friend_id = ?";
         jdbcTemplate.update(sqlDeleteFriend, userId, friendId);
-        jdbcTemplate.update(MyConstants.SQLFEEDUSER, userId, friendId, 1, 3, 1, LocalDateTime.now());
+        TransactionEvents.afterCommit(() -> friendGraph.removeFriend(userId, friendId));
+        feedStorage.addFeed(userId, friendId, EventType.FRIEND, OperationType.REMOVE);
         log.debug("Пользователь {} успешно удалил из друзей {} ", userId, friendId);
     }
 
     @Override
     public List<User> getFriendsList(Integer userId) {
-        String sqlFriendsList = "SELECT * " + "FROM users u " + "JOIN user_friend uf on u.user_id = uf.friend_id " +
-                "WHERE uf.user_id = ?";
-        return jdbcTemplate.query(sqlFriendsList, this::makeUser, userId);
+        return getUsersByIds(toList(friendGraph.getFriendIds(userId)));
     }
 
     @Override
     public List<User> getCommonFriends(Integer userId, Integer friendId) {
-        String sqlCommonFriends = "SELECT * " + "FROM users u " + "JOIN user_friend uf on u.user_id = uf.friend_id " +
-                "JOIN user_friend uf1 on uf.friend_id = uf1.friend_id " + "WHERE uf.user_id = ? AND uf1.user_id = ?";
-        return jdbcTemplate.query(sqlCommonFriends, this::makeUser, userId, friendId);
+        return getUsersByIds(toList(friendGraph.getCommonFriendIds(userId, friendId)));
     }
 
     @Override
+    @Transactional
     public void deleteUserById(int userId) {
-        if (!getUser(userId).isPresent()) {
+        if (!exists(userId)) {
             throw new EntityNotFoundException("Пользователь с id: " + userId + " не найден.");
         }
+        String sqlLikesCount = "UPDATE films SET likes_count = likes_count - 1 " +
+                "WHERE film_id IN (SELECT film_id FROM film_likes WHERE user_id = ?)";
+        filmCache.invalidateAll(jdbcTemplate.queryForList("SELECT film_id FROM film_likes WHERE user_id = ?",
+                Integer.class, userId));
+        jdbcTemplate.update(sqlLikesCount, userId);
         String sql = "DELETE FROM users WHERE user_id = ?;";
         jdbcTemplate.update(sql, userId);
+        TransactionEvents.afterCommit(() -> {
+            friendGraph.removeUser(userId);
+            feedTimelines.clear();
+        });
     }
 
-    @Override
-    public Set<Integer> getSimilarLikes(int userId) {
-        for (User u : getAllUsers()) {
-            if (u.getId() != userId) {
-                return getLikedFilmsByUserId(userId, u.getId());
-            }
-        }
-        return Collections.emptySet();
-    }
-
-    private Set<Integer> getLikedFilmsByUserId(Integer userId, Integer id) {
-        Set<Integer> userLikes = new HashSet<>();
-        String sql = "SELECT f.FILM_ID FROM (SELECT FILM_ID FROM FILM_LIKES WHERE USER_ID = ?) as f LEFT JOIN\n" +
-                "(SELECT FILM_ID from FILM_LIKES where USER_ID = ?) as u ON f.FILM_ID = u.FILM_ID " +
-                "WHERE u.FILM_ID is null";
-        SqlRowSet sqlRowSet = jdbcTemplate.queryForRowSet(sql, id, userId);
-        while (sqlRowSet.next()) {
-            userLikes.add(sqlRowSet.getInt("film_id"));
-        }
-        return userLikes;
+    private static List<Integer> toList(int[] ids) {
+        return Arrays.stream(ids).boxed().collect(Collectors.toList());
     }
 
     private User makeUser(ResultSet rs, int rowNum) throws SQLException {
-        int userId = rs.getInt("user_id");
-        try {
-            return new User(userId, rs.getString("email"), rs.getString("login"),
-                    rs.getString("name"),
-                    rs.getDate("birthday").toLocalDate());
-        } catch (DataAccessException e) {
-            throw new EntityNotFoundException(WRONG_USER_ID);
-        }
+        return new User(rs.getInt("user_id"), rs.getString("email"), rs.getString("login"),
+                rs.getString("name"),
+                rs.getDate("birthday").toLocalDate());
     }
 }
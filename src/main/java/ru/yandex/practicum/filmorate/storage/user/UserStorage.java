@@ -1,23 +1,37 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
+import java.util.function.Consumer;
 
 public interface UserStorage {
 
     User addUser(User user);
 
+    List<User> addUsers(List<User> users);
+
     User updateUser(User user);
 
-    List<User> getAllUsers();
+    List<User> getUsersPage(Integer afterId, int limit);
+
+    void forEachUser(Consumer<User> action);
+
+    List<User> getUsersByIds(List<Integer> ids);
 
     Optional<User> getUser(int userId);
 
+    boolean exists(int userId);
+
+    boolean existsAll(Collection<Integer> userIds);
+
     void addFriend(Integer userId, Integer friendId);
 
+    void addFriends(List<Friendship> friendships, boolean withFeed);
+
     void deleteFriend(Integer userId, Integer friendId);
 
     List<User> getFriendsList(Integer userId);
@@ -25,6 +39,4 @@ public interface UserStorage {
     List<User> getCommonFriends(Integer userId, Integer friendId);
 
     void deleteUserById(int userId);
-
-    Set<Integer> getSimilarLikes(int userId);
 }
@@ -0,0 +1,275 @@
+package ru.yandex.practicum.filmorate.storage.writer;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.model.WriterStats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Очередь записей, которую фоновый поток выгружает пачками: пачка записывается, когда в ней набралось
+ * {@code flushSize} элементов или прошло {@code flushIntervalMs} с первого элемента. Если очередь
+ * заполнена, добавляющий поток ждёт, пока жив фоновый поток. Элементы, добавленные после остановки,
+ * записываются сразу в вызывающем потоке. При ошибке записи пачки элементы записываются по одному,
+ * элементы, которые так и не удалось записать, передаются обработчику ошибок.
+ * В синхронном режиме каждый элемент записывается сразу в вызывающем потоке, ошибки записи
+ * пробрасываются вызывающему коду.
+ */
+@Slf4j
+public class BatchWriter<T> implements AutoCloseable {
+
+    private static final long SHUTDOWN_TIMEOUT_MS = 30_000;
+    private static final long ENQUEUE_WAIT_MS = 10;
+
+    private final String name;
+    private final Consumer<List<T>> sink;
+    private final Consumer<List<T>> failureHandler;
+    private final boolean async;
+    private final int queueCapacity;
+    private final int flushSize;
+    private final long flushIntervalNanos;
+    private final BlockingQueue<T> queue;
+    private final Thread thread;
+    private final AtomicLong enqueued = new AtomicLong();
+    private final Object flushMonitor = new Object();
+    private final ReadWriteLock shutdownLock = new ReentrantReadWriteLock();
+    private volatile boolean running = true;
+    private volatile boolean flushRequested;
+    private long processed;
+    private long written;
+    private long failed;
+    private long flushes;
+    private long lastFlushMicros;
+    private long maxFlushMicros;
+    private long totalFlushMicros;
+
+    public BatchWriter(String name, Consumer<List<T>> sink, boolean async, int queueCapacity, int flushSize,
+                       long flushIntervalMs) {
+        this(name, sink, failedItems -> {
+        }, async, queueCapacity, flushSize, flushIntervalMs);
+    }
+
+    public BatchWriter(String name, Consumer<List<T>> sink, Consumer<List<T>> failureHandler, boolean async,
+                       int queueCapacity, int flushSize, long flushIntervalMs) {
+        this.name = name;
+        this.sink = sink;
+        this.failureHandler = failureHandler;
+        this.async = async;
+        this.queueCapacity = queueCapacity;
+        this.flushSize = flushSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.thread = new Thread(this::run, name + "-writer");
+        if (async) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+        log.debug("Запись {}: {}, очередь - {}, пачка - {}, интервал - {} мс", name,
+                async ? "асинхронная" : "синхронная", queueCapacity, flushSize, flushIntervalMs);
+    }
+
+    public void append(T item) {
+        if (!async || !enqueue(item)) {
+            enqueued.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                sink.accept(List.of(item));
+            } catch (RuntimeException e) {
+                record(1, 1, start);
+                throw e;
+            }
+            record(1, 0, start);
+        }
+    }
+
+    /**
+     * Добавляет элементы в очередь. В синхронном режиме все элементы записываются одним пакетом.
+     */
+    public void appendAll(List<T> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        if (async && running) {
+            items.forEach(this::append);
+            return;
+        }
+        enqueued.addAndGet(items.size());
+        long start = System.nanoTime();
+        try {
+            sink.accept(items);
+        } catch (RuntimeException e) {
+            record(items.size(), items.size(), start);
+            throw e;
+        }
+        record(items.size(), 0, start);
+    }
+
+    /**
+     * Ждёт, пока будут записаны все элементы, добавленные до вызова.
+     */
+    public void awaitFlushed() {
+        long target = enqueued.get();
+        synchronized (flushMonitor) {
+            while (processed < target && thread.isAlive()) {
+                flushRequested = true;
+                try {
+                    flushMonitor.wait(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    public WriterStats getWriterStats() {
+        synchronized (flushMonitor) {
+            return new WriterStats(name, async, queue.size(), queueCapacity, written, failed, flushes,
+                    lastFlushMicros, maxFlushMicros, flushes == 0 ? 0 : totalFlushMicros / flushes);
+        }
+    }
+
+    /**
+     * Останавливает фоновый поток, предварительно записав всё, что осталось в очереди.
+     */
+    @Override
+    public void close() {
+        shutdownLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            shutdownLock.writeLock().unlock();
+        }
+        if (!async) {
+            return;
+        }
+        try {
+            thread.join(SHUTDOWN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<T> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            flush(rest);
+        }
+        log.debug("Запись {} остановлена, записано - {}, ошибок - {}", name, written, failed);
+    }
+
+    /**
+     * Ставит элемент в очередь и возвращает {@code false}, если запись уже остановлена. Проверка флага
+     * и постановка в очередь выполняются под блокировкой чтения, а {@link #close()} снимает флаг под
+     * блокировкой записи, поэтому после остановки в очередь, которую уже никто не выгрузит, ничего
+     * не попадает. Место в очереди ожидается, только пока жив фоновый поток.
+     */
+    private boolean enqueue(T item) {
+        shutdownLock.readLock().lock();
+        try {
+            if (!running) {
+                return false;
+            }
+            enqueued.incrementAndGet();
+            while (!queue.offer(item, ENQUEUE_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                if (!thread.isAlive()) {
+                    log.warn("Фоновый поток {} остановлен, запись выполняется синхронно", name);
+                    flush(List.of(item));
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Ожидание места в очереди {} прервано, запись выполняется синхронно", name);
+            flush(List.of(item));
+        } finally {
+            shutdownLock.readLock().unlock();
+        }
+        return true;
+    }
+
+    private void run() {
+        List<T> batch = new ArrayList<>(flushSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                T first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < flushSize) {
+                    queue.drainTo(batch, flushSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() == flushSize || remaining <= 0 || flushRequested || !running) {
+                        break;
+                    }
+                    T next = queue.poll(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(1)),
+                            TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                log.warn("Фоновый поток {} прерван, запись продолжается до остановки", name);
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch = new ArrayList<>(flushSize);
+            }
+        }
+    }
+
+    /**
+     * Обработчик ошибок вызывается до учёта пачки, так что ждущие в {@link #awaitFlushed()} видят уже
+     * обработанные ошибки.
+     */
+    private void flush(List<T> batch) {
+        long start = System.nanoTime();
+        List<T> failedItems = new ArrayList<>();
+        try {
+            sink.accept(batch);
+        } catch (RuntimeException e) {
+            log.warn("Пачка {} из {} элементов не записана, запись по одному: {}", name, batch.size(),
+                    e.getMessage());
+            for (T item : batch) {
+                try {
+                    sink.accept(List.of(item));
+                } catch (RuntimeException itemException) {
+                    failedItems.add(item);
+                    log.error("Элемент {} не записан: {}", name, item, itemException);
+                }
+            }
+        }
+        if (!failedItems.isEmpty()) {
+            try {
+                failureHandler.accept(failedItems);
+            } catch (RuntimeException e) {
+                log.error("Ошибка обработки {} незаписанных элементов {}", failedItems.size(), name, e);
+            }
+        }
+        record(batch.size(), failedItems.size(), start);
+    }
+
+    private void record(int items, int failedItems, long start) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        synchronized (flushMonitor) {
+            processed += items;
+            written += items - failedItems;
+            failed += failedItems;
+            flushes++;
+            lastFlushMicros = micros;
+            maxFlushMicros = Math.max(maxFlushMicros, micros);
+            totalFlushMicros += micros;
+            if (queue.isEmpty()) {
+                flushRequested = false;
+            }
+            flushMonitor.notifyAll();
+        }
+    }
+}
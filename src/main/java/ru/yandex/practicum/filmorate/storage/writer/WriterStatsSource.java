@@ -0,0 +1,8 @@
+package ru.yandex.practicum.filmorate.storage.writer;
+
+import ru.yandex.practicum.filmorate.model.WriterStats;
+
+public interface WriterStatsSource {
+
+    WriterStats getWriterStats();
+}
@@ -29,14 +29,19 @@ create TABLE FILMS (
 	DESCRIPTION CHARACTER VARYING(200) NOT NULL,
 	RELEASE_DATE DATE NOT NULL,
 	DURATION INTEGER NOT NULL,
-	MPA_ID INTEGER NOT NULL REFERENCES MPA(MPA_ID) ON delete CASCADE
+	MPA_ID INTEGER NOT NULL REFERENCES MPA(MPA_ID) ON delete CASCADE,
+	LIKES_COUNT INTEGER DEFAULT 0 NOT NULL
 );
+create index IF NOT EXISTS FILM_LIKES_COUNT_INDEX on FILMS (LIKES_COUNT DESC, FILM_ID);
+create index IF NOT EXISTS FILM_RELEASE_DATE_INDEX on FILMS (RELEASE_DATE);
+
 create TABLE FILM_GENRES (
     PAIR_ID INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
 	FILM_ID INTEGER NOT NULL REFERENCES FILMS(FILM_ID) ON delete CASCADE,
 	GENRE_ID INTEGER NOT NULL REFERENCES GENRES(GENRE_ID) ON delete CASCADE
 );
 create unique index IF NOT EXISTS FILM_GENRE_UINDEX on FILM_GENRES (FILM_ID, GENRE_ID);
+create index IF NOT EXISTS FILM_GENRE_GENRE_INDEX on FILM_GENRES (GENRE_ID, FILM_ID);
 
 create TABLE USERS (
 	USER_ID INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
@@ -61,8 +66,10 @@ create TABLE REVIEWS (
     USER_ID INTEGER NOT NULL REFERENCES USERS(USER_ID) ON delete CASCADE,
     REVIEW_BODY CHARACTER VARYING(1000) NOT NULL,
     IS_POSITIVE BOOLEAN NOT NULL,
-    USEFUL INTEGER
+    USEFUL INTEGER DEFAULT 0 NOT NULL
 );
+create index IF NOT EXISTS REVIEW_USEFUL_INDEX on REVIEWS (USEFUL DESC, REVIEW_ID);
+create index IF NOT EXISTS REVIEW_FILM_USEFUL_INDEX on REVIEWS (FILM_ID, USEFUL DESC, REVIEW_ID);
 
 create TABLE REVIEW_LIKES (
     LIKE_ID INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
@@ -80,6 +87,7 @@ create TABLE USER_FRIEND (
 );
 
 CREATE UNIQUE index IF NOT EXISTS USER_FRIEND_UINDEX on USER_FRIEND (USER_ID, FRIEND_ID);
+CREATE index IF NOT EXISTS USER_FRIEND_FRIEND_INDEX on USER_FRIEND (FRIEND_ID, USER_ID);
 
 CREATE TABLE DIRECTORS (
     DIRECTOR_ID INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
@@ -125,4 +133,5 @@ TIME_STAMP TIMESTAMP,
 CONSTRAINT CONSTRAINT_EVENT_ID  PRIMARY KEY (EVENT_ID )
 );
 CREATE UNIQUE INDEX IF NOT EXISTS PRIMARY_KEY_EVENT_ID  ON FEED (EVENT_ID);
+CREATE INDEX IF NOT EXISTS FEED_USER_EVENT_INDEX ON FEED (USER_ID, EVENT_ID);
 
@@ -0,0 +1,133 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.WriterStats;
+import ru.yandex.practicum.filmorate.storage.writer.BatchWriter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchWriterTest {
+
+    @Test
+    void shouldWriteInBatchesInOrder() {
+        List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+        try (BatchWriter<Integer> writer = new BatchWriter<>("test", batches::add, true, 100, 10, 50)) {
+            IntStream.range(0, 25).forEach(writer::append);
+            writer.awaitFlushed();
+
+            List<Integer> written = batches.stream().flatMap(List::stream).collect(Collectors.toList());
+            assertEquals(IntStream.range(0, 25).boxed().collect(Collectors.toList()), written,
+                    "Все элементы должны быть записаны в порядке добавления");
+            assertTrue(batches.stream().allMatch(batch -> batch.size() <= 10), "Размер пачки не должен превышать 10");
+            WriterStats stats = writer.getWriterStats();
+            assertEquals(25, stats.getWritten(), "Количество записанных элементов не соответствует");
+            assertEquals(batches.size(), stats.getFlushes(), "Количество выгрузок не соответствует");
+            assertEquals(0, stats.getQueueDepth(), "После выгрузки очередь должна быть пустой");
+        }
+    }
+
+    @Test
+    void shouldBlockWhenQueueIsFullAndFlushOnClose() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        BatchWriter<Integer> writer = new BatchWriter<>("test", batch -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            written.addAll(batch);
+        }, true, 2, 1, 1);
+        writer.append(1);
+        Thread.sleep(50);
+        writer.append(2);
+        writer.append(3);
+        Thread producer = new Thread(() -> writer.append(4));
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive(), "При заполненной очереди добавление должно ждать");
+
+        release.countDown();
+        producer.join(TimeUnit.SECONDS.toMillis(5));
+        writer.close();
+        assertEquals(List.of(1, 2, 3, 4), written, "При остановке очередь должна быть записана полностью");
+    }
+
+    @Test
+    void shouldNotLoseItemsAppendedWhileClosing() throws InterruptedException {
+        int producers = 4;
+        int itemsPerProducer = 20_000;
+        for (int round = 0; round < 20; round++) {
+            List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+            BatchWriter<Integer> writer = new BatchWriter<>("test", written::addAll, true, 16, 8, 1);
+            CountDownLatch started = new CountDownLatch(producers);
+            List<Thread> threads = new ArrayList<>();
+            for (int producer = 0; producer < producers; producer++) {
+                int first = producer * itemsPerProducer;
+                Thread thread = new Thread(() -> {
+                    started.countDown();
+                    for (int i = first; i < first + itemsPerProducer; i++) {
+                        writer.append(i);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            started.await();
+            writer.close();
+            for (Thread thread : threads) {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+                assertFalse(thread.isAlive(), "Добавление не должно зависать после остановки записи");
+            }
+
+            assertEquals(producers * itemsPerProducer, new HashSet<>(written).size(),
+                    "Элементы, добавленные во время остановки, не должны теряться");
+            assertEquals(producers * itemsPerProducer, written.size(), "Элементы не должны записываться дважды");
+        }
+    }
+
+    @Test
+    void shouldRetryFailedBatchItemByItem() {
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> failed = Collections.synchronizedList(new ArrayList<>());
+        try (BatchWriter<Integer> writer = new BatchWriter<>("test", batch -> {
+            if (batch.contains(2)) {
+                throw new IllegalStateException("Ошибка записи");
+            }
+            written.addAll(batch);
+        }, failed::addAll, true, 100, 10, 50)) {
+            IntStream.rangeClosed(1, 3).forEach(writer::append);
+            writer.awaitFlushed();
+
+            assertEquals(List.of(1, 3), written, "Элементы без ошибок должны быть записаны");
+            assertEquals(List.of(2), failed, "Незаписанные элементы должны передаваться обработчику ошибок");
+            assertEquals(1, writer.getWriterStats().getFailed(), "Количество ошибок не соответствует");
+        }
+    }
+
+    @Test
+    void shouldWriteImmediatelyAndPropagateErrorsInSyncMode() {
+        List<Integer> written = new ArrayList<>();
+        try (BatchWriter<Integer> writer = new BatchWriter<>("test", batch -> {
+            if (batch.contains(2)) {
+                throw new IllegalStateException("Ошибка записи");
+            }
+            written.addAll(batch);
+        }, false, 100, 10, 50)) {
+            writer.append(1);
+            assertEquals(List.of(1), written, "В синхронном режиме элемент должен записываться сразу");
+            assertThrows(IllegalStateException.class, () -> writer.append(2),
+                    "В синхронном режиме ошибка записи должна пробрасываться");
+            assertEquals(1, writer.getWriterStats().getFailed(), "Количество ошибок не соответствует");
+        }
+    }
+}
@@ -8,6 +8,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.CacheStats;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.storage.director.DirectorDBStorage;
 
@@ -41,6 +42,7 @@ class DirectorDBStorageTest {
     void dropFilmAndUserStorageDataBase() {
         jdbcTemplate.update("DELETE FROM directors");
         jdbcTemplate.update("ALTER TABLE directors ALTER COLUMN director_id RESTART WITH 1");
+        directorDBStorage.reloadCache();
     }
 
     @Test
@@ -109,4 +111,33 @@ class DirectorDBStorageTest {
         assertEquals(directorAfterCreate, allDirectors.get(0),
                 "Первый созданный режиссёр должен соответствовать первому режиссёру из списка");
     }
+
+    @Test
+    void shouldKeepCacheInSyncWithDirectorChanges() {
+        directorDBStorage.updateDirector(directorForUpdate);
+        assertEquals(Optional.of(new Director(1, "NameAfterUpdate")), directorDBStorage.getDirector(1),
+                "После обновления кэш должен отдавать новое имя режиссёра");
+
+        directorDBStorage.deleteDirector(1);
+        assertTrue(directorDBStorage.getAllDirectors().isEmpty(),
+                "После удаления режиссёр не должен оставаться в кэше");
+    }
+
+    @Test
+    void shouldCountCacheHitsAndLoadMissesFromDataBase() {
+        jdbcTemplate.update("INSERT INTO directors (name) VALUES ('DirectorOutsideCache')");
+        CacheStats before = directorDBStorage.getCacheStats();
+
+        directorDBStorage.getDirector(1);
+        Optional<Director> loaded = directorDBStorage.getDirector(2);
+        directorDBStorage.getDirector(2);
+        directorDBStorage.getDirector(3);
+
+        CacheStats after = directorDBStorage.getCacheStats();
+        assertEquals(Optional.of(new Director(2, "DirectorOutsideCache")), loaded,
+                "Режиссёр, которого нет в кэше, должен догружаться из БД");
+        assertEquals(2, after.getHits() - before.getHits(), "Количество попаданий в кэш не соответствует");
+        assertEquals(2, after.getMisses() - before.getMisses(), "Количество промахов кэша не соответствует");
+        assertEquals(2, after.getSize(), "Догруженный режиссёр должен остаться в кэше");
+    }
 }
@@ -0,0 +1,228 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.feed.FeedTimelines;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.like.LikeMatrix;
+import ru.yandex.practicum.filmorate.storage.search.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class FeedTimelineTest {
+
+    private final UserService userService;
+    private final FilmService filmService;
+    private final FeedTimelines feedTimelines;
+    private final FriendGraph friendGraph;
+    private final LikeMatrix likeMatrix;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmSearchIndex searchIndex;
+    private final FilmCache filmCache;
+    private final JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void createTimelineTestEnvironment() {
+        feedTimelines.clear();
+        friendGraph.rebuild();
+        likeMatrix.rebuild();
+        popularityIndex.rebuild();
+        searchIndex.rebuild();
+        for (int i = 1; i <= 4; i++) {
+            userService.addUser(new User(0, "email" + i, "login" + i, "name" + i, LocalDate.of(1990, 1, i)));
+        }
+        filmService.addFilm(new Film(0, "film", "description", LocalDate.of(2000, 1, 1), 100,
+                new Mpa(1, null, null), new HashSet<>(), new HashSet<>(), 0));
+    }
+
+    @AfterEach
+    void dropTimelineTestDataBase() {
+        jdbcTemplate.update("DELETE FROM film_likes");
+        jdbcTemplate.update("DELETE FROM feed");
+        jdbcTemplate.update("DELETE FROM user_friend");
+        jdbcTemplate.update("DELETE FROM users");
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1");
+        jdbcTemplate.update("DELETE FROM films");
+        jdbcTemplate.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1");
+        filmCache.clear();
+        feedTimelines.clear();
+        friendGraph.rebuild();
+        likeMatrix.rebuild();
+        popularityIndex.rebuild();
+        searchIndex.rebuild();
+    }
+
+    @Test
+    void shouldShowEventsOfFollowedUsersNewestFirst() {
+        userService.addFriend(1, 2);
+        userService.addFriend(1, 3);
+        filmService.addLike(1, 2);
+        userService.addFriend(3, 4);
+        filmService.addLike(1, 4);
+        filmService.addLike(1, 1);
+
+        List<Feed> timeline = userService.getTimeline(1, null, 20);
+        assertEquals(List.of(3, 2), authors(timeline),
+                "В ленте должны быть только события друзей, от новых к старым");
+        assertEquals(EventType.FRIEND, timeline.get(0).getEventType(), "Тип события не соответствует");
+
+        filmService.removeLike(1, 2);
+        timeline = userService.getTimeline(1, null, 20);
+        assertEquals(List.of(2, 3, 2), authors(timeline), "Новое событие друга должно попасть в ленту");
+        assertEquals(OperationType.REMOVE, timeline.get(0).getOperation(), "Операция не соответствует");
+
+        List<Feed> page = userService.getTimeline(1, timeline.get(0).getEventId(), 1);
+        assertEquals(List.of(timeline.get(1).getEventId()), eventIds(page),
+                "Страница должна начинаться после указанного события");
+        assertThrows(EntityNotFoundException.class, () -> userService.getTimeline(999, null, 20),
+                "Для несуществующего пользователя должна возвращаться ошибка");
+    }
+
+    @Test
+    void shouldRebuildTimelineAfterFriendshipChanges() {
+        userService.addFriend(1, 2);
+        filmService.addLike(1, 2);
+        userService.addFriend(3, 4);
+        assertEquals(List.of(2), authors(userService.getTimeline(1, null, 20)),
+                "В ленте должны быть события друга");
+
+        userService.addFriend(1, 3);
+        assertEquals(List.of(3, 2), authors(userService.getTimeline(1, null, 20)),
+                "После добавления друга в ленте должны появиться его прошлые события");
+
+        userService.deleteFriend(1, 2);
+        assertEquals(List.of(3), authors(userService.getTimeline(1, null, 20)),
+                "После удаления из друзей его события не должны показываться");
+    }
+
+    @Test
+    void shouldMergePopularAuthorsAndFallBackToLoaderWhenBufferIsShort() {
+        userService.addFriend(1, 2);
+        userService.addFriend(1, 3);
+        userService.addFriend(3, 2);
+        FeedTimelines timelines = new FeedTimelines(friendGraph, 2, 10, 2);
+        List<Feed> stored = new ArrayList<>();
+        int[] loads = {0};
+        FeedTimelines.TimelineLoader loader = (userId, beforeEventId, limit) -> {
+            loads[0]++;
+            return stored.stream()
+                    .filter(feed -> friendGraph.isFriend(userId, feed.getUserId()))
+                    .filter(feed -> feed.getEventId() < beforeEventId)
+                    .sorted(Comparator.comparing(Feed::getEventId).reversed())
+                    .limit(limit)
+                    .collect(Collectors.toList());
+        };
+
+        assertEquals(List.of(), timelines.getTimeline(1, Integer.MAX_VALUE, 10, loader), "Лента должна быть пустой");
+        publish(timelines, stored, 1, 3);
+        publish(timelines, stored, 2, 2);
+        assertEquals(List.of(2, 1), eventIds(timelines.getTimeline(1, Integer.MAX_VALUE, 10, loader)),
+                "События популярного автора должны подмешиваться при чтении");
+        assertEquals(1, loads[0], "Полная лента должна читаться из буферов");
+
+        publish(timelines, stored, 3, 3);
+        publish(timelines, stored, 4, 3);
+        assertEquals(List.of(4, 3, 2), eventIds(timelines.getTimeline(1, Integer.MAX_VALUE, 3, loader)),
+                "Страница в пределах буфера должна читаться из памяти");
+        assertEquals(1, loads[0], "Страница в пределах буфера не должна читаться из БД");
+        assertEquals(List.of(4, 3, 2, 1), eventIds(timelines.getTimeline(1, Integer.MAX_VALUE, 10, loader)),
+                "Вытесненные из буфера события должны читаться из БД");
+        assertEquals(2, loads[0], "Страница за пределами буфера должна читаться из БД");
+    }
+
+    @Test
+    void shouldLoadTimelineOutsideLockAndKeepEventsPublishedDuringLoad() throws Exception {
+        userService.addFriend(1, 2);
+        userService.addFriend(3, 2);
+        FeedTimelines timelines = new FeedTimelines(friendGraph, 10, 10, 100);
+        List<Feed> stored = Collections.synchronizedList(new ArrayList<>());
+        publish(timelines, stored, 1, 2);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FeedTimelines.TimelineLoader slowLoader = (userId, beforeEventId, limit) -> {
+            List<Feed> loaded = load(stored, userId, beforeEventId, limit);
+            loading.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return loaded;
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<Feed>> timeline = executor.submit(() ->
+                    timelines.getTimeline(1, Integer.MAX_VALUE, 10, slowLoader));
+            assertTrue(loading.await(10, TimeUnit.SECONDS), "Загрузка ленты не начата");
+            executor.submit(() -> publish(timelines, stored, 2, 2)).get(10, TimeUnit.SECONDS);
+            assertEquals(List.of(2, 1), eventIds(timelines.getTimeline(3, Integer.MAX_VALUE, 10,
+                            (userId, beforeEventId, limit) -> load(stored, userId, beforeEventId, limit))),
+                    "Ленты других пользователей должны читаться во время загрузки");
+
+            release.countDown();
+            assertEquals(List.of(2, 1), eventIds(timeline.get(10, TimeUnit.SECONDS)),
+                    "События, разданные во время загрузки, должны попадать в ленту");
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Feed> load(List<Feed> stored, int userId, int beforeEventId, int limit) {
+        synchronized (stored) {
+            return stored.stream()
+                    .filter(feed -> friendGraph.isFriend(userId, feed.getUserId()))
+                    .filter(feed -> feed.getEventId() < beforeEventId)
+                    .sorted(Comparator.comparing(Feed::getEventId).reversed())
+                    .limit(limit)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static void publish(FeedTimelines timelines, List<Feed> stored, int eventId, int userId) {
+        Feed feed = Feed.builder()
+                .eventId(eventId)
+                .userId(userId)
+                .entityId(1)
+                .eventType(EventType.LIKE)
+                .operation(OperationType.ADD)
+                .timestamp(new Date())
+                .build();
+        stored.add(feed);
+        timelines.publish(feed);
+    }
+
+    private static List<Integer> authors(List<Feed> feeds) {
+        return feeds.stream().map(Feed::getUserId).collect(Collectors.toList());
+    }
+
+    private static List<Integer> eventIds(List<Feed> feeds) {
+        return feeds.stream().map(Feed::getEventId).collect(Collectors.toList());
+    }
+}
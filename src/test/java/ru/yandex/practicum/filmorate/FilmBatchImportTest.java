@@ -0,0 +1,168 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.controller.FilmController;
+import ru.yandex.practicum.filmorate.model.BatchError;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.DirectorService;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.director.DirectorDBStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.like.LikeMatrix;
+import ru.yandex.practicum.filmorate.storage.search.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
+
+import javax.validation.ConstraintViolationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class FilmBatchImportTest {
+
+    private final FilmController filmController;
+    private final FilmService filmService;
+    private final DirectorService directorService;
+    private final DirectorDBStorage directorStorage;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmSearchIndex searchIndex;
+    private final FilmCache filmCache;
+    private final FilmStorage filmStorage;
+    private final UserService userService;
+    private final LikeMatrix likeMatrix;
+    private final FriendGraph friendGraph;
+    private final JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void createBatchTestEnvironment() {
+        popularityIndex.rebuild();
+        searchIndex.rebuild();
+        likeMatrix.rebuild();
+        friendGraph.rebuild();
+        directorService.addDirector(new Director(0, "Tarantino"));
+    }
+
+    @AfterEach
+    void dropBatchTestDataBase() {
+        jdbcTemplate.update("DELETE FROM film_likes");
+        jdbcTemplate.update("DELETE FROM feed");
+        jdbcTemplate.update("DELETE FROM users");
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1");
+        jdbcTemplate.update("DELETE FROM films");
+        jdbcTemplate.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1");
+        filmCache.clear();
+        jdbcTemplate.update("DELETE FROM directors");
+        jdbcTemplate.update("ALTER TABLE directors ALTER COLUMN director_id RESTART WITH 1");
+        directorStorage.reloadCache();
+        popularityIndex.rebuild();
+        searchIndex.rebuild();
+        likeMatrix.rebuild();
+        friendGraph.rebuild();
+    }
+
+    @Test
+    void shouldImportJsonArrayAndReportInvalidItems() throws IOException {
+        BatchResult result = filmController.addFilms(body("[" +
+                film("first", 1, "[{\"id\":1},{\"id\":2}]", "[{\"id\":1}]") + "," +
+                film("", 1, "[]", "[]") + "," +
+                film("unknownMpa", 99, "[]", "[]") + "," +
+                "{\"name\":\"badDate\",\"description\":\"d\",\"releaseDate\":\"not a date\"," +
+                "\"duration\":100,\"mpa\":{\"id\":1}}," +
+                film("unknownDirector", 1, "[]", "[{\"id\":42}]") + "," +
+                film("second", 2, null, null) + "]"));
+
+        assertEquals(2, result.getAccepted(), "Количество добавленных фильмов не соответствует");
+        assertEquals(4, result.getRejected(), "Количество ошибок не соответствует");
+        assertEquals(Arrays.asList(1, null, null, null, null, 2), result.getIds(),
+                "ID должны возвращаться в порядке элементов запроса");
+        assertEquals(List.of(1, 2, 3, 4), result.getErrors().stream().map(BatchError::getIndex)
+                .collect(Collectors.toList()), "Ошибки должны указывать на индексы элементов");
+        assertTrue(result.getErrors().get(0).getError().startsWith("name"),
+                "Ошибка проверки должна указывать на поле");
+
+        Film first = filmService.getFilm(1);
+        assertEquals(2, first.getGenres().size(), "Жанры фильма не сохранены");
+        assertEquals("Tarantino", first.getDirectors().iterator().next().getName(), "Режиссёр фильма не сохранён");
+        assertEquals("PG", filmService.getFilm(2).getMpa().getName(), "Рейтинг фильма не соответствует");
+        assertEquals(List.of(1, 2), filmService.getPopularFilms(10, null, null).stream().map(Film::getId)
+                .collect(Collectors.toList()), "Добавленные фильмы должны попасть в индекс популярности");
+        assertEquals(1, filmService.getFilmsBySearch("tarant", "director", 0, 10).size(),
+                "Добавленные фильмы должны попасть в поисковый индекс");
+    }
+
+    @Test
+    void shouldImportNdjsonStream() throws IOException {
+        BatchResult result = filmController.addFilms(body(
+                film("first", 1, "[]", "[]") + "\n" + film("second", 3, "[{\"id\":6}]", "[]") + "\n"));
+
+        assertEquals(List.of(1, 2), result.getIds(), "ID добавленных фильмов не соответствуют");
+        assertTrue(result.getErrors().isEmpty(), "Ошибок быть не должно");
+        assertEquals(6, filmService.getFilm(2).getGenres().iterator().next().getId(), "Жанр фильма не сохранён");
+    }
+
+    @Test
+    void shouldRejectMalformedJson() {
+        assertThrows(ConstraintViolationException.class, () -> filmController.addFilms(body("[" +
+                film("first", 1, "[]", "[]") + ", {\"name\": ")), "Некорректный JSON должен отклоняться");
+    }
+
+    @Test
+    void shouldAddLikesInBatchIdempotently() throws IOException {
+        filmController.addFilms(body("[" + film("first", 1, "[]", "[]") + "," + film("second", 1, "[]", "[]") + "]"));
+        for (int i = 1; i <= 3; i++) {
+            userService.addUser(new User(0, "user" + i + "@mail.ru", "user" + i, "name", LocalDate.of(1990, 1, i)));
+        }
+        String likes = "[{\"filmId\":2,\"userId\":1},{\"filmId\":2,\"userId\":2},{\"filmId\":1,\"userId\":3}," +
+                "{\"filmId\":2,\"userId\":1},{\"filmId\":99,\"userId\":1},{\"filmId\":1,\"userId\":99}," +
+                "{\"filmId\":1}]";
+
+        BatchResult result = filmController.addLikes(body(likes));
+        assertEquals(4, result.getAccepted(), "Повторный лайк в пакете не должен быть ошибкой");
+        assertEquals(List.of(4, 5, 6), result.getErrors().stream().map(BatchError::getIndex)
+                .collect(Collectors.toList()), "Ошибки должны указывать на индексы элементов");
+        assertNull(result.getIds(), "ID для лайков не возвращаются");
+        assertEquals(List.of(2, 1), filmService.getPopularFilms(10, null, null).stream().map(Film::getId)
+                .collect(Collectors.toList()), "Индекс популярности должен учитывать лайки пакета");
+        assertEquals(2, filmService.getFilm(2).getLikesCount(), "Счётчик лайков фильма не соответствует");
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM feed", Integer.class),
+                "Для каждого нового лайка должно создаваться событие ленты");
+
+        filmController.addLikes(body(likes));
+        assertEquals(2, filmService.getFilm(2).getLikesCount(), "Повторный пакет не должен менять счётчик лайков");
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM feed", Integer.class),
+                "Повторный пакет не должен создавать события ленты");
+        assertEquals(0, filmStorage.countInconsistentLikes(), "Счётчики лайков должны совпадать с FILM_LIKES");
+    }
+
+    private static String film(String name, int mpaId, String genres, String directors) {
+        return "{\"name\":\"" + name + "\",\"description\":\"description\",\"releaseDate\":\"2000-01-01\"," +
+                "\"duration\":100,\"mpa\":{\"id\":" + mpaId + "}" +
+                (genres == null ? "" : ",\"genres\":" + genres) +
+                (directors == null ? "" : ",\"directors\":" + directors) + "}";
+    }
+
+    private static ByteArrayInputStream body(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
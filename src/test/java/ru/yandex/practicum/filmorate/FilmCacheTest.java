@@ -0,0 +1,187 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.service.DirectorService;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.director.DirectorDBStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.like.LikeMatrix;
+import ru.yandex.practicum.filmorate.storage.search.FilmSearchIndex;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class FilmCacheTest {
+
+    private final FilmService filmService;
+    private final UserService userService;
+    private final DirectorService directorService;
+    private final DirectorDBStorage directorStorage;
+    private final FilmCache filmCache;
+    private final FilmPopularityIndex popularityIndex;
+    private final LikeMatrix likeMatrix;
+    private final FilmSearchIndex searchIndex;
+    private final JdbcTemplate jdbcTemplate;
+    Director director;
+
+    @BeforeEach
+    void createFilmCacheTestEnvironment() {
+        popularityIndex.rebuild();
+        likeMatrix.rebuild();
+        searchIndex.rebuild();
+        director = directorService.addDirector(new Director(0, "Director"));
+        userService.addUser(new User(0, "email", "login", "name", LocalDate.of(1990, 1, 1)));
+        filmService.addFilm(new Film(0, "film", "description", LocalDate.of(2000, 1, 1), 100,
+                new Mpa(1, null, null), new HashSet<>(List.of(new Genre(1, null))),
+                new HashSet<>(List.of(director)), 0));
+    }
+
+    @AfterEach
+    void dropFilmCacheTestDataBase() {
+        jdbcTemplate.update("DELETE FROM film_likes");
+        jdbcTemplate.update("DELETE FROM users");
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1");
+        jdbcTemplate.update("DELETE FROM films");
+        jdbcTemplate.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1");
+        jdbcTemplate.update("DELETE FROM directors");
+        jdbcTemplate.update("ALTER TABLE directors ALTER COLUMN director_id RESTART WITH 1");
+        filmCache.clear();
+        directorStorage.reloadCache();
+        popularityIndex.rebuild();
+        likeMatrix.rebuild();
+        searchIndex.rebuild();
+    }
+
+    @Test
+    void shouldServeRepeatedReadsFromCache() {
+        CacheStats before = filmCache.getCacheStats();
+        filmService.getFilm(1);
+        filmService.getFilm(1);
+        CacheStats after = filmCache.getCacheStats();
+
+        assertEquals(2, after.getHits() - before.getHits(), "Повторные чтения должны попадать в кэш");
+        assertEquals(before.getMisses(), after.getMisses(), "Фильм должен попасть в кэш при создании");
+    }
+
+    @Test
+    void shouldNotShareCachedInstances() {
+        filmService.getFilm(1).getGenres().clear();
+
+        assertEquals(1, filmService.getFilm(1).getGenres().size(),
+                "Изменение полученного фильма не должно менять кэш");
+    }
+
+    @Test
+    void shouldInvalidateFilmOnLikesAndUserDelete() {
+        filmService.addLike(1, 1);
+        assertEquals(1, filmService.getFilm(1).getLikesCount(), "После лайка счётчик в кэше должен обновиться");
+
+        userService.deleteUserById(1);
+        assertEquals(0, filmService.getFilm(1).getLikesCount(),
+                "После удаления пользователя его лайк не должен учитываться");
+    }
+
+    @Test
+    void shouldInvalidateFilmOnUpdateAndDelete() {
+        filmService.getFilm(1);
+        filmService.updateFilm(new Film(1, "newName", "description", LocalDate.of(2000, 1, 1), 100,
+                new Mpa(2, null, null), new HashSet<>(), new HashSet<>(), 0));
+
+        Film updatedFilm = filmService.getFilm(1);
+        assertEquals("newName", updatedFilm.getName(), "После обновления кэш должен отдавать новое название");
+        assertTrue(updatedFilm.getGenres().isEmpty(), "После обновления жанры фильма должны быть удалены");
+
+        filmService.deleteFilmById(1);
+        assertThrows(EntityNotFoundException.class, () -> filmService.getFilm(1),
+                "Удалённый фильм не должен отдаваться из кэша");
+    }
+
+    @Test
+    void shouldInvalidateFilmOnDirectorChanges() {
+        filmService.getFilm(1);
+        directorService.updateDirector(new Director(director.getId(), "Renamed"));
+        assertEquals(Set.of(new Director(director.getId(), "Renamed")), filmService.getFilm(1).getDirectors(),
+                "После переименования режиссёра кэш должен отдавать новое имя");
+
+        directorService.deleteDirector(director.getId());
+        assertTrue(filmService.getFilm(1).getDirectors().isEmpty(),
+                "После удаления режиссёра он не должен оставаться у фильма в кэше");
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedFilms() {
+        FilmCache cache = new FilmCache(true, 2);
+        cache.put(film(1), cache.getGeneration());
+        cache.put(film(2), cache.getGeneration());
+        cache.get(1);
+        cache.put(film(3), cache.getGeneration());
+
+        assertTrue(cache.get(1).isPresent(), "Недавно прочитанный фильм не должен вытесняться");
+        assertFalse(cache.get(2).isPresent(), "Давно не используемый фильм должен быть вытеснен");
+        assertEquals(2, cache.getCacheStats().getSize(), "Размер кэша не должен превышать ограничение");
+        assertEquals(1, cache.getCacheStats().getEvictions(), "Вытеснение должно учитываться в статистике");
+    }
+
+    @Test
+    void shouldNotCacheFilmsLoadedBeforeInvalidation() {
+        FilmCache cache = new FilmCache(true, 10);
+        long generation = cache.getGeneration();
+        cache.invalidate(1);
+        cache.put(film(1), generation);
+
+        assertFalse(cache.get(1).isPresent(), "Фильм, прочитанный до инвалидации, не должен попадать в кэш");
+    }
+
+    @Test
+    void shouldKeepLoadsOfOtherFilmsAfterInvalidation() {
+        FilmCache cache = new FilmCache(true, 2);
+        long generation = cache.getGeneration();
+        cache.invalidate(1);
+        cache.put(film(2), generation);
+
+        assertTrue(cache.get(2).isPresent(), "Инвалидация одного фильма не должна отменять загрузку другого");
+
+        generation = cache.getGeneration();
+        cache.invalidate(3);
+        cache.invalidate(4);
+        cache.invalidate(5);
+        cache.put(film(1), generation);
+        cache.put(film(6), cache.getGeneration());
+
+        assertFalse(cache.get(1).isPresent(),
+                "После вытеснения инвалидаций загрузки, начатые раньше, не должны попадать в кэш");
+        assertTrue(cache.get(6).isPresent(), "Загрузка после вытесненных инвалидаций должна попадать в кэш");
+    }
+
+    @Test
+    void shouldNotCacheWhenDisabled() {
+        FilmCache cache = new FilmCache(false, 10);
+        cache.put(film(1), cache.getGeneration());
+
+        assertFalse(cache.get(1).isPresent(), "Выключенный кэш не должен хранить фильмы");
+        assertEquals(0, cache.getCacheStats().getSize(), "Выключенный кэш должен быть пустым");
+    }
+
+    private static Film film(int id) {
+        return new Film(id, "film" + id, "description", LocalDate.of(2000, 1, 1), 100,
+                new Mpa(1, "G", "description"), new HashSet<>(), new HashSet<>(), 0);
+    }
+}
@@ -8,14 +8,23 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.storage.director.DirectorDBStorage;
 import ru.yandex.practicum.filmorate.storage.feed.FeedDBStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
 import ru.yandex.practicum.filmorate.storage.film.FilmDBStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.like.LikeMatrix;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.statement.StatementRegistry;
 import ru.yandex.practicum.filmorate.storage.user.UserDBStorage;
 
 import java.time.LocalDate;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -33,7 +42,15 @@ class FilmDBStorageTest {
     private final DirectorDBStorage directorStorage;
     @Autowired
     private final FeedDBStorage feedDBStorage;
+    private final FilmCache filmCache;
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final GenreStorage genreStorage;
+    private final MpaStorage mpaStorage;
+    private final PlatformTransactionManager transactionManager;
+    private final StatementRegistry statementRegistry;
+    private final LikeMatrix likeMatrix;
+    private final FilmPopularityIndex popularityIndex;
     User user;
     User anotherUser;
     Film film;
@@ -55,10 +72,10 @@ class FilmDBStorageTest {
                 LocalDate.of(1950, 2, 5));
         film = new Film(0, "firstFilm", "firstDescription",
                 LocalDate.of(1950, 3, 5), 100,
-                new Mpa(1, null, null), new HashSet<>(), new HashSet<>());
+                new Mpa(1, null, null), new HashSet<>(), new HashSet<>(), 0);
         anotherFilm = new Film(0, "secondFilm", "secondDescription",
                 LocalDate.of(1955, 4, 5), 150,
-                new Mpa(2, null, null), new HashSet<>(), new HashSet<>());
+                new Mpa(2, null, null), new HashSet<>(), new HashSet<>(), 0);
         anotherFilm.getGenres().add(new Genre(1, "Комедия"));
         firstDirector = new Director(1, "Tarantino");
         secondDirector = new Director(2, "Scorsese");
@@ -82,8 +99,19 @@ class FilmDBStorageTest {
         jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1");
         jdbcTemplate.update("DELETE FROM films");
         jdbcTemplate.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1");
+        filmCache.clear();
         jdbcTemplate.update("DELETE FROM directors");
         jdbcTemplate.update("ALTER TABLE directors ALTER COLUMN director_id RESTART WITH 1");
+        directorStorage.reloadCache();
+    }
+
+    @Test
+    void shouldCheckFilmsExistence() {
+        assertTrue(filmStorage.exists(anotherFilmAfterCreate.getId()), "Фильм должен существовать");
+        assertFalse(filmStorage.exists(999), "Фильм с неизвестным ID не должен существовать");
+        assertTrue(filmStorage.existsAll(List.of(1, 2, 2)), "Все фильмы должны существовать");
+        assertFalse(filmStorage.existsAll(List.of(2, 999)), "Неизвестный ID должен находиться в наборе");
+        assertTrue(filmStorage.existsAll(List.of()), "Пустой набор не должен содержать неизвестных ID");
     }
 
     @Test
@@ -97,7 +125,7 @@ class FilmDBStorageTest {
     void shouldUpdateFilm() {
         Film filmForUpdate = new Film(1, "newName", "firstDescription",
                 LocalDate.of(1950, 3, 5), 100,
-                new Mpa(1, null, null), new HashSet<>(), new HashSet<>());
+                new Mpa(1, null, null), new HashSet<>(), new HashSet<>(), 0);
         Film filmAfterUpdate = filmStorage.updateFilm(filmForUpdate);
 
         assertNotNull(filmAfterUpdate);
@@ -108,7 +136,7 @@ class FilmDBStorageTest {
 
     @Test
     void shouldReturnAllFilms() {
-        List<Film> allFilms = filmStorage.getAllFilms();
+        List<Film> allFilms = filmStorage.getFilmsPage(null, 1000);
 
         assertEquals(2, allFilms.size(),
                 "Количество фильмов не соответствует кол-ву созданных фильмов");
@@ -116,6 +144,31 @@ class FilmDBStorageTest {
                 "Первый созданный фильм должен соответствовать первому фильму из списка");
     }
 
+    @Test
+    void shouldReturnFilmsPageAfterCursor() {
+        List<Film> firstPage = filmStorage.getFilmsPage(null, 1);
+        List<Film> secondPage = filmStorage.getFilmsPage(firstPage.get(0).getId(), 1);
+
+        assertEquals(List.of(filmAfterCreate), firstPage, "Первая страница должна начинаться с первого фильма");
+        assertEquals(List.of(anotherFilmAfterCreate), secondPage,
+                "Следующая страница должна начинаться после последнего фильма предыдущей");
+        assertTrue(filmStorage.getFilmsPage(secondPage.get(0).getId(), 1).isEmpty(),
+                "После последнего фильма страница должна быть пустой");
+    }
+
+    @Test
+    void shouldStreamAllFilmsWithGenresAndDirectors() {
+        List<Film> streamedFilms = new ArrayList<>();
+        filmStorage.forEachFilm(streamedFilms::add);
+
+        assertEquals(filmStorage.getFilmsPage(null, 1000), streamedFilms,
+                "Потоковая выгрузка должна вернуть все фильмы в порядке ID");
+        assertEquals(Set.of(new Genre(1, "Комедия")), streamedFilms.get(1).getGenres(),
+                "У выгруженного фильма должны быть загружены жанры");
+        assertEquals(Set.of(secondDirectorAfterCreate), streamedFilms.get(1).getDirectors(),
+                "У выгруженного фильма должны быть загружены режиссёры");
+    }
+
     @Test
     void shouldReturnFilmById() {
         Optional<Film> filmOptional = filmStorage.getFilm(1);
@@ -175,7 +228,8 @@ class FilmDBStorageTest {
         filmStorage.addLike(2, 2);
         filmStorage.addLike(2, 1);
 
-        List<Film> popularFilms = filmStorage.getPopularFilms(1, 1, 1955);
+        List<Film> popularFilms = filmStorage.getFilmsByIds(new PopularFilmsQuery(namedParameterJdbcTemplate)
+                .getTopFilmIds(1, 1, 1955));
 
         Optional<Film> filmOptional = filmStorage.getFilm(2);
 
@@ -189,6 +243,39 @@ class FilmDBStorageTest {
                                         "в списке самых популярных должны быть эквивалентны")));
     }
 
+    @Test
+    void shouldKeepLikesCountInSyncWithLikes() {
+        filmStorage.addLike(1, 1);
+        filmStorage.addLike(1, 1);
+        filmStorage.addLike(1, 2);
+        filmStorage.removeLike(1, 2);
+        filmStorage.removeLike(1, 2);
+
+        Optional<Film> filmOptional = filmStorage.getFilm(1);
+
+        assertThat(filmOptional)
+                .isPresent()
+                .hasValueSatisfying(film ->
+                        assertThat(film).hasFieldOrPropertyWithValue("likesCount", 1));
+        assertEquals(0, filmStorage.countInconsistentLikes(),
+                "Счётчик лайков должен совпадать с количеством записей в FILM_LIKES");
+    }
+
+    @Test
+    void shouldRebuildInconsistentLikesCount() {
+        filmStorage.addLike(2, 1);
+        jdbcTemplate.update("UPDATE films SET likes_count = 10 WHERE film_id = 2");
+
+        assertEquals(1, filmStorage.countInconsistentLikes(),
+                "Рассогласованный счётчик должен быть обнаружен");
+        assertEquals(Map.of(2, -9), filmStorage.rebuildLikesCount(),
+                "Должен быть пересчитан только 1 фильм на разницу с FILM_LIKES");
+        assertEquals(0, filmStorage.countInconsistentLikes(),
+                "После пересчёта счётчики должны быть согласованы");
+        assertEquals(1, filmStorage.getFilm(2).orElseThrow().getLikesCount(),
+                "Счётчик лайков после пересчёта не соответствует");
+    }
+
     @Test
     void shouldReturnDirectorFilms() {
         Optional<Film> filmOptional = filmStorage.getFilm(1);
@@ -209,7 +296,7 @@ class FilmDBStorageTest {
     @Test
     void shouldAddFeedLikeFilm() {
         filmStorage.addLike(1, 1);
-        List<Feed> feddList = feedDBStorage.getFeedsList(1);
+        List<Feed> feddList = feedDBStorage.getFeedPage(1, null, 1000);
         Feed feedUser = feddList.get(0);
         assertEquals(feedUser.getEventType(), EventType.LIKE);
         assertEquals(feedUser.getOperation(), OperationType.ADD);
@@ -219,9 +306,83 @@ class FilmDBStorageTest {
     void shouldAddFeedRemoveFilm() {
         filmStorage.addLike(1, 1);
         filmStorage.removeLike(1, 1);
-        List<Feed> feddList = feedDBStorage.getFeedsList(1);
+        List<Feed> feddList = feedDBStorage.getFeedPage(1, null, 1000);
         Feed feedUser = feddList.get(1);
         assertEquals(feedUser.getEventType(), EventType.LIKE);
         assertEquals(feedUser.getOperation(), OperationType.REMOVE);
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldNotAddFeedForDuplicateOrMissingLike() {
+        filmStorage.addLike(1, 1);
+        filmStorage.addLike(1, 1);
+        filmStorage.removeLike(1, 1);
+        filmStorage.removeLike(1, 1);
+
+        List<Feed> feeds = feedDBStorage.getFeedPage(1, null, 1000);
+        assertEquals(List.of(OperationType.ADD, OperationType.REMOVE),
+                feeds.stream().map(Feed::getOperation).collect(Collectors.toList()),
+                "События ленты должны записываться только для добавленных и удалённых лайков");
+    }
+
+    @Test
+    void shouldCoalesceLikesInWriteBehindMode() {
+        FilmDBStorage writeBehindStorage = new FilmDBStorage(jdbcTemplate, genreStorage, directorStorage,
+                mpaStorage, filmCache, feedDBStorage, likeMatrix, popularityIndex, statementRegistry,
+                transactionManager, true, 100, 1000, 60_000);
+        try {
+            writeBehindStorage.addLike(1, 1);
+            writeBehindStorage.addLike(1, 2);
+            writeBehindStorage.removeLike(1, 2);
+            writeBehindStorage.addLike(2, 1);
+            writeBehindStorage.removeLike(2, 1);
+            writeBehindStorage.addLike(2, 1);
+            assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM film_likes", Integer.class),
+                    "Лайки должны накапливаться в буфере");
+            assertEquals(Set.of(), writeBehindStorage.getLikedFilmIds(3), "Лайков пользователя быть не должно");
+            assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM film_likes", Integer.class),
+                    "Чтение без незаписанных изменений не должно ждать записи буфера");
+
+            assertEquals(1, writeBehindStorage.getFilm(1).orElseThrow().getLikesCount(),
+                    "Перед чтением накопленные лайки должны быть записаны");
+            assertEquals(1, writeBehindStorage.getFilm(2).orElseThrow().getLikesCount(),
+                    "Итоговое изменение лайка должно быть записано");
+            assertEquals(Set.of(1, 2), writeBehindStorage.getLikedFilmIds(1), "Лайки пользователя не соответствуют");
+            assertEquals(Set.of(), writeBehindStorage.getLikedFilmIds(2), "Снятый лайк не должен записываться");
+            assertEquals(0, writeBehindStorage.countInconsistentLikes(), "Счётчики лайков должны совпадать");
+            assertEquals(6, writeBehindStorage.getWriterStats().getWritten(),
+                    "Все изменения лайков должны быть учтены");
+        } finally {
+            writeBehindStorage.close();
+        }
+    }
+
+    @Test
+    void shouldUndoInMemoryLikesWhenWriteBehindFails() {
+        FilmDBStorage writeBehindStorage = new FilmDBStorage(jdbcTemplate, genreStorage, directorStorage,
+                mpaStorage, filmCache, feedDBStorage, likeMatrix, popularityIndex, statementRegistry,
+                transactionManager, true, 100, 1000, 60_000);
+        popularityIndex.rebuild();
+        likeMatrix.rebuild();
+        try {
+            likeMatrix.addLike(1, 1);
+            popularityIndex.addLike(1);
+            writeBehindStorage.addLike(1, 1);
+            likeMatrix.addLike(1, 999);
+            popularityIndex.addLike(1);
+            writeBehindStorage.addLike(1, 999);
+
+            assertEquals(1, writeBehindStorage.getFilm(1).orElseThrow().getLikesCount(),
+                    "Записан должен быть только лайк существующего пользователя");
+            assertEquals(1, likeMatrix.getLikesCount(1), "Незаписанный лайк должен быть откачен в матрице");
+            assertEquals(1, popularityIndex.getLikesCount(1), "Незаписанный лайк должен быть откачен в индексе");
+            assertEquals(1, feedDBStorage.getFeedPage(1, null, 1000).size(),
+                    "Событие ленты должно записываться вместе с лайком");
+            assertEquals(1, writeBehindStorage.getWriterStats().getFailed(), "Количество ошибок не соответствует");
+        } finally {
+            writeBehindStorage.close();
+            popularityIndex.rebuild();
+            likeMatrix.rebuild();
+        }
+    }
+}
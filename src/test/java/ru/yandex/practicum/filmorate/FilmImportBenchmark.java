@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.controller.FilmController;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.search.FilmSearchIndex;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Нагрузочный тест пакетной загрузки фильмов в файловую БД H2. Не запускается в составе обычных тестов.
+ * Для сравнения часть фильмов добавляется по одному через {@link FilmService#addFilm(Film)}.
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:file:./target/film-import-benchmark")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class FilmImportBenchmark {
+
+    private static final int BATCH_FILMS = 100_000;
+    private static final int SINGLE_FILMS = 5_000;
+
+    private final FilmController filmController;
+    private final FilmService filmService;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmSearchIndex searchIndex;
+    private final FilmCache filmCache;
+    private final JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void dropBenchmarkData() {
+        jdbcTemplate.update("DELETE FROM films");
+        jdbcTemplate.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1");
+        filmCache.clear();
+        popularityIndex.rebuild();
+        searchIndex.rebuild();
+    }
+
+    @Test
+    void measureFilmsPerMinute() throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < SINGLE_FILMS; i++) {
+            filmService.addFilm(new Film(0, "single" + i, "description", LocalDate.of(2000, 1, 1), 100,
+                    new Mpa(1, null, null), new HashSet<>(List.of(new Genre(1 + i % 6, null))), new HashSet<>(), 0));
+        }
+        report("по одному", SINGLE_FILMS, System.nanoTime() - start);
+
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < BATCH_FILMS; i++) {
+            body.append("{\"name\":\"film").append(i).append("\",\"description\":\"description\",")
+                    .append("\"releaseDate\":\"2000-01-01\",\"duration\":100,\"mpa\":{\"id\":").append(1 + i % 5)
+                    .append("},\"genres\":[{\"id\":").append(1 + i % 6).append("}]}\n");
+        }
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        start = System.nanoTime();
+        BatchResult result = filmController.addFilms(new ByteArrayInputStream(bytes));
+        report("пакетом", BATCH_FILMS, System.nanoTime() - start);
+
+        assertEquals(BATCH_FILMS, result.getAccepted(), "Все фильмы должны быть добавлены");
+        assertEquals(SINGLE_FILMS + BATCH_FILMS, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM films",
+                Integer.class), "Количество фильмов в БД не соответствует");
+    }
+
+    private static void report(String mode, int films, long nanos) {
+        System.out.printf("Фильмов добавлено %s: %d за %d мс (%.0f в минуту)%n", mode, films, nanos / 1_000_000,
+                films * 6e10 / nanos);
+    }
+}
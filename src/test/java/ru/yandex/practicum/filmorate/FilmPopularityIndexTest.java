@@ -0,0 +1,184 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.LikesCountVerifier;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.like.LikeMatrix;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class FilmPopularityIndexTest {
+
+    private static final List<Integer> GENRES = Arrays.asList(null, 1, 2, 3);
+    private static final List<Integer> YEARS = Arrays.asList(null, 1950, 1955, 2000);
+
+    private final FilmService filmService;
+    private final UserService userService;
+    private final FilmPopularityIndex popularityIndex;
+    private final LikeMatrix likeMatrix;
+    private final FilmCache filmCache;
+    private final LikesCountVerifier likesCountVerifier;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @BeforeEach
+    void createPopularityTestEnvironment() {
+        popularityIndex.rebuild();
+        likeMatrix.rebuild();
+        for (int i = 1; i <= 4; i++) {
+            userService.addUser(new User(0, "email" + i, "login" + i, "name" + i,
+                    LocalDate.of(1990, 1, i)));
+        }
+        addFilm("first", 1950, 1);
+        addFilm("second", 1955, 1, 2);
+        addFilm("third", 1955, 2);
+        addFilm("fourth", 1950);
+        addFilm("fifth", 1955, 1);
+    }
+
+    @AfterEach
+    void dropPopularityTestDataBase() {
+        jdbcTemplate.update("DELETE FROM film_likes");
+        jdbcTemplate.update("DELETE FROM film_genres");
+        jdbcTemplate.update("DELETE FROM users");
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1");
+        jdbcTemplate.update("DELETE FROM films");
+        jdbcTemplate.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1");
+        filmCache.clear();
+        popularityIndex.rebuild();
+        likeMatrix.rebuild();
+    }
+
+    @Test
+    void shouldMatchSqlRankingForEveryFilter() {
+        filmService.addLike(2, 1);
+        filmService.addLike(2, 2);
+        filmService.addLike(3, 1);
+        filmService.addLike(3, 2);
+        filmService.addLike(3, 3);
+        filmService.addLike(5, 4);
+        filmService.addLike(1, 4);
+        filmService.removeLike(3, 3);
+
+        assertSameRankingAsSql();
+    }
+
+    @Test
+    void shouldIgnoreDuplicateLikesAndUnknownRemovals() {
+        filmService.addLike(4, 1);
+        filmService.addLike(4, 1);
+        filmService.removeLike(1, 1);
+
+        assertEquals(1, popularityIndex.getLikesCount(4), "Повторный лайк не должен учитываться");
+        assertEquals(0, popularityIndex.getLikesCount(1), "Счётчик лайков не может быть отрицательным");
+        assertSameRankingAsSql();
+    }
+
+    @Test
+    void shouldFollowFilmUpdatesAndDeletes() {
+        filmService.addLike(1, 1);
+        filmService.addLike(1, 2);
+        Film movedFilm = new Film(1, "first", "description", LocalDate.of(2000, 5, 5), 100,
+                new Mpa(1, null, null), new HashSet<>(List.of(new Genre(3, null))), new HashSet<>(), 0);
+        filmService.updateFilm(movedFilm);
+        filmService.deleteFilmById(3);
+
+        assertEquals(List.of(1), ids(filmService.getPopularFilms(10, 3, 2000)),
+                "Фильм должен переместиться в рейтинг нового жанра и года");
+        assertSameRankingAsSql();
+    }
+
+    @Test
+    void shouldForgetLikesOfDeletedUser() {
+        filmService.addLike(2, 1);
+        filmService.addLike(2, 2);
+        filmService.addLike(5, 2);
+        userService.deleteUserById(2);
+
+        assertEquals(1, popularityIndex.getLikesCount(2), "Лайки удалённого пользователя не должны учитываться");
+        assertSameRankingAsSql();
+    }
+
+    @Test
+    void shouldRebuildSameRankingFromDataBase() {
+        filmService.addLike(5, 1);
+        filmService.addLike(5, 2);
+        filmService.addLike(4, 3);
+        List<Integer> beforeRebuild = popularityIndex.getTopFilmIds(10, null, null);
+
+        popularityIndex.rebuild();
+
+        assertEquals(beforeRebuild, popularityIndex.getTopFilmIds(10, null, null),
+                "После перестроения из БД рейтинг не должен измениться");
+        assertSameRankingAsSql();
+    }
+
+    @Test
+    void shouldApplyLikesCountRepairToIndex() {
+        filmService.addLike(2, 1);
+        filmService.addLike(2, 2);
+        filmService.addLike(3, 1);
+        jdbcTemplate.update("UPDATE films SET likes_count = 10 WHERE film_id = 2");
+        jdbcTemplate.update("UPDATE films SET likes_count = 0 WHERE film_id = 3");
+        popularityIndex.rebuild();
+        filmService.addLike(2, 3);
+
+        assertEquals(2, likesCountVerifier.verifyLikesCount(), "Должны быть пересчитаны 2 фильма");
+        assertEquals(3, popularityIndex.getLikesCount(2),
+                "Лайк после построения индекса не должен теряться при пересчёте");
+        assertEquals(1, popularityIndex.getLikesCount(3), "Индекс должен получить пересчитанный счётчик");
+        assertEquals(1, likeMatrix.getLikesCount(3), "Пересчёт счётчика не должен менять матрицу лайков");
+        assertSameRankingAsSql();
+    }
+
+    private void assertSameRankingAsSql() {
+        PopularFilmsQuery popularFilms = new PopularFilmsQuery(namedParameterJdbcTemplate);
+        for (Integer genreId : GENRES) {
+            for (Integer year : YEARS) {
+                for (int count : new int[]{1, 2, 10}) {
+                    assertEquals(popularFilms.getTopFilmIds(count, genreId, year),
+                            ids(filmService.getPopularFilms(count, genreId, year)),
+                            "Рейтинг не совпадает с SQL для genreId=" + genreId + ", year=" + year +
+                                    ", count=" + count);
+                }
+            }
+        }
+    }
+
+    private void addFilm(String name, int year, Integer... genreIds) {
+        Film film = new Film(0, name, "description", LocalDate.of(year, 3, 5), 100,
+                new Mpa(1, null, null), new HashSet<>(), new HashSet<>(), 0);
+        for (Integer genreId : genreIds) {
+            film.getGenres().add(new Genre(genreId, null));
+        }
+        filmService.addFilm(film);
+    }
+
+    private static List<Integer> ids(List<Film> films) {
+        return films.stream().map(Film::getId).collect(Collectors.toList());
+    }
+}
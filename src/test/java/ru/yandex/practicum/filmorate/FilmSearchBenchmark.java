@@ -0,0 +1,128 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.storage.director.DirectorDBStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.search.FilmSearchIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Нагрузочный тест поиска фильмов: индекс триграмм в памяти против прежнего запроса с {@code LIKE '%q%'}.
+ * Не запускается в составе обычных тестов. Запросы короче трёх символов проверяют запасной путь индекса,
+ * который просматривает все названия в памяти. Перед замером результаты индекса сверяются с {@code LIKE}.
+ */
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class FilmSearchBenchmark {
+
+    private static final int FILMS = 100_000;
+    private static final int DIRECTORS = 2_000;
+    private static final int LIMIT = 1000;
+    private static final int INDEX_REPEATS = 50;
+    private static final int LIKE_REPEATS = 3;
+    private static final String[] WORDS = {"night", "star", "river", "shadow", "king", "love", "winter", "city",
+            "dream", "storm", "garden", "ghost", "silver", "ocean", "fire", "road", "empire", "mirror", "queen",
+            "wolf"};
+    private static final String[] SURNAMES = {"smith", "ivanov", "kurosawa", "bergman", "fellini", "nolan", "varda",
+            "tarkovsky", "kubrick", "scott"};
+    private static final List<String> QUERIES = List.of("a", "ov", "night", "star 4", "shadow king", "12345",
+            "kubrick 1", "zzz");
+
+    private final FilmService filmService;
+    private final FilmStorage filmStorage;
+    private final DirectorDBStorage directorStorage;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmSearchIndex searchIndex;
+    private final FilmCache filmCache;
+    private final JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void createBenchmarkData() {
+        List<Object[]> directors = new ArrayList<>();
+        for (int i = 1; i <= DIRECTORS; i++) {
+            directors.add(new Object[]{SURNAMES[i % SURNAMES.length] + " " + i});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO directors (name) VALUES (?)", directors);
+        Random random = new Random(1);
+        List<Object[]> films = new ArrayList<>();
+        List<Object[]> filmDirectors = new ArrayList<>();
+        for (int i = 1; i <= FILMS; i++) {
+            films.add(new Object[]{WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] +
+                    " " + i});
+            filmDirectors.add(new Object[]{i, 1 + random.nextInt(DIRECTORS)});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO films (name, description, release_date, duration, mpa_id) " +
+                "VALUES (?, 'description', '2000-01-01', 100, 1)", films);
+        jdbcTemplate.batchUpdate("INSERT INTO film_directors (film_id, director_id) VALUES (?, ?)", filmDirectors);
+        directorStorage.reloadCache();
+        popularityIndex.rebuild();
+        long start = System.nanoTime();
+        searchIndex.rebuild();
+        System.out.printf("Индекс поиска по %d фильмам и %d режиссёрам построен за %d мс%n", FILMS, DIRECTORS,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @AfterEach
+    void dropBenchmarkData() {
+        jdbcTemplate.update("DELETE FROM films");
+        jdbcTemplate.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1");
+        jdbcTemplate.update("DELETE FROM directors");
+        jdbcTemplate.update("ALTER TABLE directors ALTER COLUMN director_id RESTART WITH 1");
+        filmCache.clear();
+        directorStorage.reloadCache();
+        popularityIndex.rebuild();
+        searchIndex.rebuild();
+    }
+
+    @Test
+    void measureSearchAgainstLike() {
+        for (String by : List.of("title", "director", "title,director")) {
+            boolean byTitle = by.contains("title");
+            boolean byDirector = by.contains("director");
+            for (String query : QUERIES) {
+                List<Integer> likeIds = ids(filmStorage.getFilmsBySearch(query, by));
+                assertEquals(likeIds.stream().limit(LIMIT).collect(Collectors.toList()),
+                        ids(filmService.getFilmsBySearch(query, by, 0, LIMIT)),
+                        "Результат индекса не совпадает с LIKE для запроса '" + query + "' по " + by);
+
+                double index = measure(INDEX_REPEATS, () -> searchIndex.search(query, byTitle, byDirector, 0, LIMIT));
+                double indexWithFilms = measure(INDEX_REPEATS,
+                        () -> filmService.getFilmsBySearch(query, by, 0, LIMIT));
+                double like = measure(LIKE_REPEATS, () -> filmStorage.getFilmsBySearch(query, by));
+                System.out.printf("Поиск '%s' по %s: найдено %d, индекс %.2f мс, индекс с загрузкой фильмов " +
+                        "%.2f мс, LIKE %.2f мс%n", query, by, likeIds.size(), index, indexWithFilms, like);
+            }
+        }
+    }
+
+    private static double measure(int repeats, Runnable search) {
+        search.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < repeats; i++) {
+            search.run();
+        }
+        return (System.nanoTime() - start) / 1e6 / repeats;
+    }
+
+    private static List<Integer> ids(List<Film> films) {
+        return films.stream().map(Film::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,156 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.DirectorService;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.director.DirectorDBStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.FilmDBStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.like.LikeMatrix;
+import ru.yandex.practicum.filmorate.storage.search.FilmSearchIndex;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class FilmSearchIndexTest {
+
+    private static final List<String> QUERIES = List.of("the", "THE", "an", "o", "Taran", "rese", "x", "'", "%");
+    private static final List<String> CRITERIA = List.of("title", "director", "title,director", "director,title");
+
+    private final FilmService filmService;
+    private final DirectorService directorService;
+    private final UserService userService;
+    private final FilmDBStorage filmStorage;
+    private final DirectorDBStorage directorStorage;
+    private final FilmPopularityIndex popularityIndex;
+    private final LikeMatrix likeMatrix;
+    private final FilmSearchIndex searchIndex;
+    private final FilmCache filmCache;
+    private final JdbcTemplate jdbcTemplate;
+    Director tarantino;
+    Director scorsese;
+
+    @BeforeEach
+    void createSearchTestEnvironment() {
+        popularityIndex.rebuild();
+        likeMatrix.rebuild();
+        searchIndex.rebuild();
+        tarantino = directorService.addDirector(new Director(0, "Quentin Tarantino"));
+        scorsese = directorService.addDirector(new Director(0, "Martin Scorsese"));
+        userService.addUser(new User(0, "email", "login", "name", LocalDate.of(1990, 1, 1)));
+        userService.addUser(new User(0, "email2", "login2", "name2", LocalDate.of(1990, 1, 1)));
+
+        addFilm("The Hateful Eight", tarantino);
+        addFilm("The Irishman", scorsese);
+        addFilm("Pulp Fiction", tarantino);
+        addFilm("Taxi Driver", scorsese);
+        addFilm("Another Film");
+    }
+
+    @AfterEach
+    void dropSearchTestDataBase() {
+        jdbcTemplate.update("DELETE FROM film_likes");
+        jdbcTemplate.update("DELETE FROM users");
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1");
+        jdbcTemplate.update("DELETE FROM films");
+        jdbcTemplate.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1");
+        filmCache.clear();
+        jdbcTemplate.update("DELETE FROM directors");
+        jdbcTemplate.update("ALTER TABLE directors ALTER COLUMN director_id RESTART WITH 1");
+        directorStorage.reloadCache();
+        popularityIndex.rebuild();
+        likeMatrix.rebuild();
+        searchIndex.rebuild();
+    }
+
+    @Test
+    void shouldMatchSqlSearchForEveryCriteria() {
+        filmService.addLike(4, 1);
+        filmService.addLike(4, 2);
+        filmService.addLike(3, 1);
+
+        assertSameResultsAsSql();
+    }
+
+    @Test
+    void shouldFollowDirectorRenameAndDelete() {
+        directorService.updateDirector(new Director(scorsese.getId(), "Sidney Lumet"));
+        assertEquals(List.of(), ids(filmService.getFilmsBySearch("scorsese", "director", 0, 100)),
+                "После переименования режиссёр не должен находиться по старому имени");
+        assertEquals(List.of(2, 4), ids(filmService.getFilmsBySearch("lumet", "director", 0, 100)),
+                "После переименования фильмы режиссёра должны находиться по новому имени");
+
+        directorService.deleteDirector(tarantino.getId());
+        assertEquals(List.of(), ids(filmService.getFilmsBySearch("taran", "director", 0, 100)),
+                "Фильмы удалённого режиссёра не должны находиться по его имени");
+        assertSameResultsAsSql();
+    }
+
+    @Test
+    void shouldFollowFilmUpdateAndDelete() {
+        Film renamed = new Film(5, "The Departed", "description", LocalDate.of(2006, 1, 1), 100,
+                new Mpa(1, null, null), new HashSet<>(), new HashSet<>(List.of(scorsese)), 0);
+        filmService.updateFilm(renamed);
+        filmService.deleteFilmById(1);
+
+        assertTrue(ids(filmService.getFilmsBySearch("another", "title", 0, 100)).isEmpty(),
+                "Фильм не должен находиться по старому названию");
+        assertEquals(List.of(2, 5), ids(filmService.getFilmsBySearch("the", "title", 0, 100)),
+                "Удалённый фильм не должен попадать в результаты поиска");
+        assertSameResultsAsSql();
+    }
+
+    @Test
+    void shouldPaginateRankedResults() {
+        filmService.addLike(3, 1);
+        filmService.addLike(3, 2);
+        filmService.addLike(2, 1);
+
+        assertEquals(List.of(3, 2), ids(filmService.getFilmsBySearch("i", "title,director", 0, 2)),
+                "Первая страница должна содержать самые популярные фильмы");
+        assertEquals(List.of(1, 4), ids(filmService.getFilmsBySearch("i", "title,director", 2, 2)),
+                "Вторая страница должна продолжать рейтинг первой");
+        assertEquals(List.of(), ids(filmService.getFilmsBySearch("i", "year", 0, 2)),
+                "Для неизвестного критерия поиска результат должен быть пустым");
+    }
+
+    private void assertSameResultsAsSql() {
+        for (String query : QUERIES) {
+            for (String by : CRITERIA) {
+                assertEquals(ids(filmStorage.getFilmsBySearch(query, by)),
+                        ids(filmService.getFilmsBySearch(query, by, 0, Integer.MAX_VALUE)),
+                        "Результаты поиска не совпадают с SQL для query=" + query + ", by=" + by);
+            }
+        }
+    }
+
+    private void addFilm(String name, Director... directors) {
+        filmService.addFilm(new Film(0, name, "description", LocalDate.of(2000, 1, 1), 100,
+                new Mpa(1, null, null), new HashSet<>(), new HashSet<>(List.of(directors)), 0));
+    }
+
+    private static List<Integer> ids(List<Film> films) {
+        return films.stream().map(Film::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,182 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.service.DirectorService;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.storage.director.DirectorDBStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.FilmDBStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.search.FilmSearchIndex;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class FilmStatementCountTest {
+
+    private final FilmService filmService;
+    private final DirectorService directorService;
+    private final FilmDBStorage filmStorage;
+    private final DirectorDBStorage directorStorage;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmSearchIndex searchIndex;
+    private final FilmCache filmCache;
+    private final JdbcTemplate jdbcTemplate;
+    Director director;
+
+    @BeforeEach
+    void createStatementTestEnvironment() {
+        popularityIndex.rebuild();
+        searchIndex.rebuild();
+        director = directorService.addDirector(new Director(0, "Director"));
+        for (int i = 1; i <= 5; i++) {
+            filmService.addFilm(new Film(0, "film" + i, "description", LocalDate.of(2000, 1, i), 100,
+                    new Mpa(1, null, null), new HashSet<>(List.of(new Genre(1, null), new Genre(i, null))),
+                    new HashSet<>(List.of(director)), 0));
+        }
+    }
+
+    @AfterEach
+    void dropStatementTestDataBase() {
+        jdbcTemplate.execute("SET QUERY_STATISTICS FALSE");
+        jdbcTemplate.update("DELETE FROM films");
+        jdbcTemplate.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1");
+        filmCache.clear();
+        jdbcTemplate.update("DELETE FROM directors");
+        jdbcTemplate.update("ALTER TABLE directors ALTER COLUMN director_id RESTART WITH 1");
+        directorStorage.reloadCache();
+        popularityIndex.rebuild();
+        searchIndex.rebuild();
+    }
+
+    @Test
+    void shouldLoadFilmsWithGenresAndDirectorsInTwoStatements() {
+        filmCache.clear();
+        assertEquals(2, countStatements(() -> filmService.getFilm(3)),
+                "Фильм должен загружаться вместе с жанрами и режиссёрами за два запроса");
+        assertEquals(0, countStatements(() -> filmService.getFilm(3)),
+                "Повторное чтение фильма должно обслуживаться из кэша");
+        assertEquals(2, countStatements(() -> filmService.getFilmsPage(null, 1000)),
+                "Список фильмов должен загружаться за два запроса");
+        assertEquals(2, countStatements(() -> filmService.getPopularFilms(10, null, null)),
+                "Популярные фильмы должны загружаться за два запроса");
+        assertEquals(2, countStatements(() -> filmService.getFilmsBySearch("film", "title", 0, 10)),
+                "Результаты поиска должны загружаться за два запроса");
+        assertEquals(2, countStatements(() -> filmStorage.getFilmsByIds(List.of(2, 1))),
+                "Фильмы по списку ID должны загружаться за два запроса");
+        assertEquals(2, countStatements(() -> filmService.getSortedDirectorFilms(director.getId(), "likes")),
+                "Фильмы режиссёра должны загружаться за два запроса");
+        assertEquals(2, countStatements(() -> filmService.getPopularFilms(10, 1, null)),
+                "Популярные фильмы жанра должны загружаться за два запроса");
+    }
+
+    @Test
+    void shouldWriteOnlyChangesOnFilmUpdate() {
+        Film unchanged = new Film(3, "film3", "description", LocalDate.of(2000, 1, 3), 100, new Mpa(1, null, null),
+                new HashSet<>(List.of(new Genre(1, null), new Genre(3, null))), new HashSet<>(List.of(director)), 0);
+        assertEquals(List.of("SELECT", "SELECT"), statementTypes(() -> filmService.updateFilm(unchanged)),
+                "Без изменений обновление должно ограничиваться чтением текущего состояния");
+
+        Film changed = new Film(3, "film3", "description", LocalDate.of(2000, 1, 3), 100, new Mpa(2, null, null),
+                new HashSet<>(List.of(new Genre(1, null), new Genre(4, null))), new HashSet<>(), 0);
+        Film[] updated = new Film[1];
+        assertEquals(List.of("DELETE", "DELETE", "INSERT", "SELECT", "SELECT", "UPDATE"),
+                statementTypes(() -> updated[0] = filmService.updateFilm(changed)),
+                "Должны записываться строка фильма и только изменившиеся связи");
+        assertEquals("PG", updated[0].getMpa().getName(), "Рейтинг должен браться из справочника");
+        assertEquals(Set.of(new Genre(1, "Комедия"), new Genre(4, "Триллер")), updated[0].getGenres(),
+                "Жанры обновлённого фильма не соответствуют");
+        assertEquals(updated[0], filmService.getFilm(3), "Возвращённый фильм должен совпадать с сохранённым");
+    }
+
+    @Test
+    void shouldServeReferenceDataWithoutStatements() {
+        assertEquals(0, countStatements(() -> {
+            filmService.getGenre(2);
+            filmService.getMpa(3);
+            directorService.getDirector(director.getId());
+            filmService.getAllGenres();
+            filmService.getAllMpa();
+            directorService.getAllDirectors();
+        }), "Справочники должны отдаваться из кэша без обращения к БД");
+    }
+
+    @Test
+    void shouldHydrateFilmsCompletely() {
+        Film film = filmService.getFilm(3);
+        assertEquals(Set.of(new Genre(1, "Комедия"), new Genre(3, "Мультфильм")), film.getGenres(),
+                "У фильма должны быть загружены все жанры");
+        assertEquals(Set.of(director), film.getDirectors(), "У фильма должны быть загружены режиссёры");
+
+        for (Film loaded : filmService.getFilmsPage(null, 1000)) {
+            assertEquals(loaded.getId() == 1 ? 1 : 2, loaded.getGenres().size(),
+                    "У каждого фильма должны быть загружены его жанры");
+            assertEquals(Set.of(director), loaded.getDirectors(), "У каждого фильма должны быть загружены режиссёры");
+        }
+    }
+
+    @Test
+    void shouldUseSameStatementsForAnyNumberOfFilms() {
+        assertEquals(collectStatements(() -> filmService.getPopularFilms(1, null, null)),
+                collectStatements(() -> filmService.getPopularFilms(5, null, null)),
+                "Текст запросов не должен зависеть от количества фильмов");
+    }
+
+    @Test
+    void shouldSplitLargeIdListsIntoChunks() {
+        List<Integer> ids = IntStream.rangeClosed(1, 2500).boxed().collect(Collectors.toList());
+
+        assertEquals(4, countStatements(() -> filmStorage.getFilmsByIds(ids)),
+                "Список из 2500 ID должен загружаться тремя порциями и одним запросом жанров и режиссёров");
+        assertEquals(List.of(1, 2, 3, 4, 5), filmStorage.getFilmsByIds(ids).stream()
+                .map(Film::getId).collect(Collectors.toList()), "Должны вернуться все существующие фильмы");
+    }
+
+    private int countStatements(Runnable action) {
+        return collectStatements(action).values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    private List<String> statementTypes(Runnable action) {
+        List<String> types = new ArrayList<>();
+        collectStatements(action).forEach((sql, count) -> {
+            String type = sql.split(" ", 2)[0].toUpperCase();
+            if (!type.equals("COMMIT")) {
+                types.addAll(Collections.nCopies(count, type));
+            }
+        });
+        Collections.sort(types);
+        return types;
+    }
+
+    private Map<String, Integer> collectStatements(Runnable action) {
+        jdbcTemplate.execute("SET QUERY_STATISTICS FALSE");
+        jdbcTemplate.execute("SET QUERY_STATISTICS TRUE");
+        action.run();
+        Map<String, Integer> statements = new HashMap<>();
+        jdbcTemplate.query("SELECT sql_statement, execution_count FROM information_schema.query_statistics", rs -> {
+            String sql = rs.getString("sql_statement");
+            if (!sql.startsWith("SET ") && !sql.contains("query_statistics")) {
+                statements.put(sql, rs.getInt("execution_count"));
+            }
+        });
+        return statements;
+    }
+}
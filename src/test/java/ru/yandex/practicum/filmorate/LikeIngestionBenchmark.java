@@ -0,0 +1,121 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.like.LikeMatrix;
+import ru.yandex.practicum.filmorate.storage.search.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Нагрузочный тест приёма лайков: несколько потоков ставят и снимают лайки со смещением к небольшому
+ * числу популярных фильмов. Не запускается в составе обычных тестов; режим записи выбирается
+ * системным свойством, например {@code -Dfilmorate.likes.write-behind=true}.
+ */
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class LikeIngestionBenchmark {
+
+    private static final int USERS = 5_000;
+    private static final int FILMS = 200;
+    private static final int THREADS = 8;
+    private static final int REQUESTS_PER_THREAD = 10_000;
+
+    private final FilmService filmService;
+    private final FilmStorage filmStorage;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmSearchIndex searchIndex;
+    private final LikeMatrix likeMatrix;
+    private final FriendGraph friendGraph;
+    private final FilmCache filmCache;
+    private final JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void createBenchmarkData() {
+        List<Object[]> users = new ArrayList<>();
+        for (int i = 1; i <= USERS; i++) {
+            users.add(new Object[]{"email" + i, "login" + i, "name" + i});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, '1990-01-01')",
+                users);
+        List<Object[]> films = new ArrayList<>();
+        for (int i = 1; i <= FILMS; i++) {
+            films.add(new Object[]{"film" + i});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO films (name, description, release_date, duration, mpa_id) " +
+                "VALUES (?, 'description', '2000-01-01', 100, 1)", films);
+        rebuildIndexes();
+    }
+
+    @AfterEach
+    void dropBenchmarkData() {
+        jdbcTemplate.update("DELETE FROM film_likes");
+        jdbcTemplate.update("DELETE FROM feed");
+        jdbcTemplate.update("DELETE FROM users");
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1");
+        jdbcTemplate.update("DELETE FROM films");
+        jdbcTemplate.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1");
+        rebuildIndexes();
+    }
+
+    @Test
+    void measureLikesPerSecond() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            Random random = new Random(thread);
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                    int filmId = 1 + (int) (FILMS * Math.pow(random.nextDouble(), 3));
+                    int userId = 1 + random.nextInt(USERS);
+                    if (random.nextInt(4) == 0) {
+                        filmService.removeLike(filmId, userId);
+                    } else {
+                        filmService.addLike(filmId, userId);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long accepted = System.nanoTime() - start;
+        int firstFilmLikes = filmService.getFilm(1).getLikesCount();
+        long flushed = System.nanoTime() - start;
+        executor.shutdown();
+
+        int requests = THREADS * REQUESTS_PER_THREAD;
+        System.out.printf("Лайков принято: %d за %d мс (%.0f в секунду), записано в БД через %d мс%n",
+                requests, accepted / 1_000_000, requests * 1e9 / accepted, flushed / 1_000_000);
+        assertEquals(likeMatrix.getLikesCount(1), firstFilmLikes, "Счётчик лайков должен совпадать с матрицей");
+        assertEquals(0, filmStorage.countInconsistentLikes(), "Счётчики лайков должны совпадать с FILM_LIKES");
+    }
+
+    private void rebuildIndexes() {
+        filmCache.clear();
+        popularityIndex.rebuild();
+        searchIndex.rebuild();
+        likeMatrix.rebuild();
+        friendGraph.rebuild();
+    }
+}
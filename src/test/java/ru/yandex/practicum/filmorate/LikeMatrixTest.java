@@ -0,0 +1,209 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.like.CompressedBitmap;
+import ru.yandex.practicum.filmorate.storage.like.LikeMatrix;
+import ru.yandex.practicum.filmorate.storage.search.FilmSearchIndex;
+
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class LikeMatrixTest {
+
+    private final FilmService filmService;
+    private final UserService userService;
+    private final LikeMatrix likeMatrix;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmSearchIndex searchIndex;
+    private final FilmCache filmCache;
+    private final JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void createLikeMatrixTestEnvironment() {
+        likeMatrix.rebuild();
+        popularityIndex.rebuild();
+        searchIndex.rebuild();
+        for (int i = 1; i <= 5; i++) {
+            userService.addUser(new User(0, "email" + i, "login" + i, "name" + i, LocalDate.of(1990, 1, i)));
+            filmService.addFilm(new Film(0, "film" + i, "description", LocalDate.of(2000, 1, i), 100,
+                    new Mpa(1, null, null), new HashSet<>(), new HashSet<>(), 0));
+        }
+        like(1, 1, 2);
+        like(2, 1, 2, 3);
+        like(3, 1, 4, 5);
+        like(4, 5);
+    }
+
+    @AfterEach
+    void dropLikeMatrixTestDataBase() {
+        jdbcTemplate.update("DELETE FROM film_likes");
+        jdbcTemplate.update("DELETE FROM feed");
+        jdbcTemplate.update("DELETE FROM users");
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1");
+        jdbcTemplate.update("DELETE FROM films");
+        jdbcTemplate.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1");
+        filmCache.clear();
+        likeMatrix.rebuild();
+        popularityIndex.rebuild();
+        searchIndex.rebuild();
+    }
+
+    @Test
+    void shouldRankUnseenFilmsBySimilarityOfNeighbours() {
+        assertEquals(List.of(3, 4, 5), ids(userService.getRecommendations(1)),
+                "Фильмы должны ранжироваться по сумме сходства соседей, которые их лайкнули");
+        assertEquals(List.of(3), likeMatrix.recommendFilmIds(1, 1),
+                "Должны учитываться только ближайшие соседи");
+    }
+
+    @Test
+    void shouldNotRecommendWithoutCommonLikes() {
+        assertEquals(List.of(), ids(userService.getRecommendations(5)),
+                "Пользователю без лайков нечего рекомендовать");
+        assertEquals(List.of(1, 4), likeMatrix.recommendFilmIds(4, 20),
+                "Рекомендации должны браться только у пользователей с общими лайками");
+        assertThrows(EntityNotFoundException.class, () -> userService.getRecommendations(999),
+                "Для несуществующего пользователя должна возвращаться ошибка");
+    }
+
+    @Test
+    void shouldForgetRemovedLikesUsersAndFilms() {
+        filmService.removeLike(3, 2);
+        assertEquals(List.of(4, 5), likeMatrix.recommendFilmIds(1, 20),
+                "Снятый лайк не должен учитываться в рекомендациях");
+
+        filmService.deleteFilmById(4);
+        assertEquals(List.of(5), likeMatrix.recommendFilmIds(1, 20),
+                "Удалённый фильм не должен рекомендоваться");
+
+        userService.deleteUserById(3);
+        assertEquals(List.of(), likeMatrix.recommendFilmIds(1, 20),
+                "Лайки удалённого пользователя не должны учитываться");
+    }
+
+    @Test
+    void shouldRebuildSameRecommendationsFromDataBase() {
+        List<Integer> beforeRebuild = likeMatrix.recommendFilmIds(1, 20);
+
+        likeMatrix.rebuild();
+
+        assertEquals(beforeRebuild, likeMatrix.recommendFilmIds(1, 20),
+                "После перестроения из БД рекомендации не должны измениться");
+    }
+
+    @Test
+    void shouldRankCommonFilmsByPopularity() {
+        assertEquals(List.of(1, 2), ids(filmService.getCommonFilms(1, 2)),
+                "Общие фильмы должны быть упорядочены по количеству лайков");
+
+        like(4, 2);
+        like(5, 2);
+        List<Film> commonFilms = filmService.getCommonFilms(2, 1);
+        assertEquals(List.of(2, 1), ids(commonFilms), "Порядок общих фильмов должен учитывать новые лайки");
+        assertEquals(4, commonFilms.get(0).getLikesCount(), "Общие фильмы должны загружаться полностью");
+        assertEquals(List.of(), ids(filmService.getCommonFilms(3, 5)),
+                "Без общих лайков список общих фильмов должен быть пустым");
+    }
+
+    @Test
+    void shouldCountLikesPerFilm() {
+        assertEquals(3, likeMatrix.getLikesCount(1), "Количество лайков фильма не соответствует");
+        filmService.removeLike(1, 3);
+        assertEquals(2, likeMatrix.getLikesCount(1), "После снятия лайка счётчик должен уменьшиться");
+        assertEquals(0, likeMatrix.getLikesCount(999), "У неизвестного фильма не должно быть лайков");
+    }
+
+    @Test
+    void shouldMatchBitSetForSparseAndDenseBitmaps() {
+        Random random = new Random(7);
+        BitSet firstExpected = new BitSet();
+        BitSet secondExpected = new BitSet();
+        CompressedBitmap first = new CompressedBitmap();
+        CompressedBitmap second = new CompressedBitmap();
+        for (int i = 0; i < 20000; i++) {
+            int dense = random.nextInt(10000);
+            int sparse = random.nextInt(1 << 20);
+            firstExpected.set(dense);
+            first.add(dense);
+            secondExpected.set(sparse);
+            second.add(sparse);
+            if (i % 3 == 0) {
+                secondExpected.set(dense);
+                second.add(dense);
+            }
+        }
+        for (int i = 0; i < 8000; i++) {
+            int value = random.nextInt(10000);
+            firstExpected.clear(value);
+            first.remove(value);
+        }
+
+        BitSet and = (BitSet) firstExpected.clone();
+        and.and(secondExpected);
+        BitSet or = (BitSet) firstExpected.clone();
+        or.or(secondExpected);
+        assertArrayEquals(firstExpected.stream().toArray(), first.toArray(), "Содержимое множества не соответствует");
+        assertEquals(secondExpected.cardinality(), second.cardinality(), "Мощность множества не соответствует");
+        assertArrayEquals(and.stream().toArray(), first.and(second).toArray(), "Пересечение не соответствует");
+        assertEquals(and.cardinality(), first.andCardinality(second), "Мощность пересечения не соответствует");
+        assertArrayEquals(or.stream().toArray(), first.or(second).toArray(), "Объединение не соответствует");
+    }
+
+    @Test
+    void shouldRollBackMatrixWhenLikeIsNotStored() {
+        jdbcTemplate.execute("ALTER TABLE film_likes RENAME TO film_likes_off");
+        try {
+            assertThrows(DataAccessException.class, () -> filmService.addLike(1, 5), "Запись лайка должна упасть");
+            assertThrows(DataAccessException.class, () -> filmService.removeLike(1, 1),
+                    "Удаление лайка должно упасть");
+        } finally {
+            jdbcTemplate.execute("ALTER TABLE film_likes_off RENAME TO film_likes");
+        }
+        assertEquals(3, likeMatrix.getLikesCount(1), "Матрица не должна меняться при ошибке хранилища");
+
+        filmService.addLike(1, 5);
+        filmService.removeLike(1, 1);
+
+        assertEquals(List.of(2, 3, 5), jdbcTemplate.queryForList(
+                "SELECT user_id FROM film_likes WHERE film_id = 1 ORDER BY user_id", Integer.class),
+                "После ошибки лайки пары должны исправляться через сервис");
+        assertEquals(3, likeMatrix.getLikesCount(1), "Количество лайков в матрице не соответствует");
+    }
+
+    private void like(int userId, int... filmIds) {
+        for (int filmId : filmIds) {
+            filmService.addLike(filmId, userId);
+        }
+    }
+
+    private static List<Integer> ids(List<Film> films) {
+        return films.stream().map(Film::getId).collect(Collectors.toList());
+    }
+}
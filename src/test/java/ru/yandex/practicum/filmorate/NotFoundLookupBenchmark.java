@@ -0,0 +1,93 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.controller.ErrorHandler;
+import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.util.Random;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Микробенчмарк ответа 404 на запросы несуществующих фильмов и пользователей. Не запускается в составе
+ * обычных тестов. Для сравнения воспроизводится прежний путь: {@code queryForObject}, перехват
+ * {@link DataAccessException} и исключение с заполненным стеком.
+ */
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class NotFoundLookupBenchmark {
+
+    private static final int WARMUP = 20_000;
+    private static final int REQUESTS = 200_000;
+
+    private final FilmService filmService;
+    private final UserService userService;
+    private final ErrorHandler errorHandler;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Test
+    void measureNotFoundPerSecond() {
+        IntConsumer previous = id -> {
+            try {
+                try {
+                    jdbcTemplate.queryForObject("SELECT * FROM films WHERE film_id = ?",
+                            (rs, rowNum) -> rs.getInt("film_id"), id);
+                } catch (DataAccessException e) {
+                    throw new StackTraceNotFoundException("Фильм с указанным ID не найден");
+                }
+            } catch (StackTraceNotFoundException e) {
+                errorHandler.handleUndefinedException(e);
+            }
+        };
+        IntConsumer film = id -> {
+            try {
+                filmService.getFilm(id);
+            } catch (EntityNotFoundException e) {
+                errorHandler.handleEntityNotFound(e);
+            }
+        };
+        IntConsumer user = id -> {
+            try {
+                userService.getUser(id);
+            } catch (EntityNotFoundException e) {
+                errorHandler.handleEntityNotFound(e);
+            }
+        };
+
+        measure("прежний путь", previous);
+        measure("фильм", film);
+        measure("пользователь", user);
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM films", Integer.class),
+                "Фильмов в БД быть не должно");
+    }
+
+    private static void measure(String mode, IntConsumer lookup) {
+        Random random = new Random(1);
+        for (int i = 0; i < WARMUP; i++) {
+            lookup.accept(1 + random.nextInt(1_000_000));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            lookup.accept(1 + random.nextInt(1_000_000));
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.printf("Ответов 404 (%s): %d за %d мс (%.0f в секунду)%n", mode, REQUESTS, nanos / 1_000_000,
+                REQUESTS * 1e9 / nanos);
+    }
+
+    private static class StackTraceNotFoundException extends RuntimeException {
+        StackTraceNotFoundException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Эталонный SQL-рейтинг популярных фильмов по счётчику лайков, с которым в тестах сверяется
+ * индекс популярности.
+ */
+class PopularFilmsQuery {
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    PopularFilmsQuery(NamedParameterJdbcTemplate namedParameterJdbcTemplate) {
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+    }
+
+    List<Integer> getTopFilmIds(int count, Integer genreId, Integer year) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource("count", count);
+        StringBuilder sql = new StringBuilder("SELECT f.film_id FROM films f WHERE TRUE ");
+        if (genreId != null) {
+            sql.append("AND f.film_id IN (SELECT film_id FROM film_genres WHERE genre_id = :genre_id) ");
+            parameters.addValue("genre_id", genreId);
+        }
+        if (year != null) {
+            sql.append("AND f.release_date >= :year_start AND f.release_date < :next_year_start ");
+            parameters.addValue("year_start", LocalDate.of(year, 1, 1))
+                    .addValue("next_year_start", LocalDate.of(year + 1, 1, 1));
+        }
+        sql.append("ORDER BY f.likes_count DESC, f.film_id LIMIT :count");
+        return namedParameterJdbcTemplate.queryForList(sql.toString(), parameters, Integer.class);
+    }
+}
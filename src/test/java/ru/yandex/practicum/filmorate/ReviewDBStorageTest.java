@@ -10,6 +10,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.jdbc.core.JdbcTemplate;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.storage.feed.FeedDBStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
 import ru.yandex.practicum.filmorate.storage.film.FilmDBStorage;
 import ru.yandex.practicum.filmorate.storage.review.ReviewDBStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserDBStorage;
@@ -17,6 +18,7 @@ import ru.yandex.practicum.filmorate.storage.user.UserDBStorage;
 import java.time.LocalDate;
 import java.util.HashSet;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -32,6 +34,7 @@ class ReviewDBStorageTest {
     private final ReviewDBStorage reviewDBStorage;
     @Autowired
     private final FeedDBStorage feedDBStorage;
+    private final FilmCache filmCache;
     private final JdbcTemplate jdbcTemplate;
     User user;
     User anotherUser;
@@ -51,10 +54,10 @@ class ReviewDBStorageTest {
                 LocalDate.of(1950, 2, 5));
         film = new Film(0, "firstFilm", "firstDescription",
                 LocalDate.of(1950, 3, 5), 100,
-                new Mpa(1, null, null), new HashSet<>(), new HashSet<>());
+                new Mpa(1, null, null), new HashSet<>(), new HashSet<>(), 0);
         anotherFilm = new Film(0, "secondFilm", "secondDescription",
                 LocalDate.of(1950, 4, 5), 150,
-                new Mpa(2, null, null), new HashSet<>(), new HashSet<>());
+                new Mpa(2, null, null), new HashSet<>(), new HashSet<>(), 0);
         review = new Review();
         review.setFilmId(1);
         review.setUserId(1);
@@ -77,13 +80,14 @@ class ReviewDBStorageTest {
         jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1");
         jdbcTemplate.update("DELETE FROM films;");
         jdbcTemplate.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1");
+        filmCache.clear();
 
     }
 
     @Test
     void shouldAddFeedCreateReview() {
         reviewDBStorage.addReview(review);
-        List<Feed> feddList = feedDBStorage.getFeedsList(1);
+        List<Feed> feddList = feedDBStorage.getFeedPage(1, null, 1000);
         Feed feedUser = feddList.get(0);
         assertEquals(feedUser.getEventType(), EventType.REVIEW);
         assertEquals(feedUser.getOperation(), OperationType.ADD);
@@ -93,7 +97,7 @@ class ReviewDBStorageTest {
     void shouldAddFeedRemoveReview() {
         reviewDBStorage.addReview(review);
         reviewDBStorage.deleteReview(1);
-        List<Feed> feddList = feedDBStorage.getFeedsList(1);
+        List<Feed> feddList = feedDBStorage.getFeedPage(1, null, 1000);
         Feed feedUser = feddList.get(1);
         assertEquals(feedUser.getEventType(), EventType.REVIEW);
         assertEquals(feedUser.getOperation(), OperationType.REMOVE);
@@ -105,10 +109,31 @@ class ReviewDBStorageTest {
         review.setContent("So Good");
         review.setReviewId(1);
         reviewDBStorage.updateReview(review);
-        List<Feed> feddList = feedDBStorage.getFeedsList(1);
+        List<Feed> feddList = feedDBStorage.getFeedPage(1, null, 1000);
         Feed feedUser = feddList.get(1);
         assertEquals(feedUser.getEventType(), EventType.REVIEW);
         assertEquals(feedUser.getOperation(), OperationType.UPDATE);
     }
-}
 
+    @Test
+    void shouldPageReviewsByUsefulnessAndId() {
+        for (int i = 0; i < 3; i++) {
+            review.setReviewId(0);
+            reviewDBStorage.addReview(review);
+        }
+        reviewDBStorage.likeReview(3, 1, true);
+        reviewDBStorage.likeReview(1, 1, false);
+
+        List<Review> firstPage = reviewDBStorage.getReviewsPage(null, null, 2);
+        Review last = firstPage.get(firstPage.size() - 1);
+        List<Review> secondPage = reviewDBStorage.getReviewsPage(last.getUseful(), last.getReviewId(), 2);
+
+        assertEquals(List.of(3, 2), reviewIds(firstPage), "Отзывы должны быть упорядочены по полезности и ID");
+        assertEquals(List.of(1), reviewIds(secondPage),
+                "Следующая страница должна начинаться после последнего отзыва предыдущей");
+    }
+
+    private static List<Integer> reviewIds(List<Review> reviews) {
+        return reviews.stream().map(Review::getReviewId).collect(Collectors.toList());
+    }
+}
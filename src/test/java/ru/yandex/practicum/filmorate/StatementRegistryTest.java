@@ -0,0 +1,68 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.StatsService;
+import ru.yandex.practicum.filmorate.storage.statement.StatementRegistry;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class StatementRegistryTest {
+
+    private final StatementRegistry statementRegistry;
+    private final StatsService statsService;
+    private final UserStorage userStorage;
+    private final FriendGraph friendGraph;
+    private final JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void dropStatementTestDataBase() {
+        jdbcTemplate.update("DELETE FROM users");
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1");
+        friendGraph.rebuild();
+    }
+
+    @Test
+    void shouldCompileInsertOnceAndCountHits() {
+        userStorage.addUser(new User(0, "first@mail.ru", "first", "first", LocalDate.of(1990, 1, 1)));
+        SimpleJdbcInsert insert = statementRegistry.insert("users", "user_id");
+        assertTrue(insert.isCompiled(), "Вставка должна храниться скомпилированной");
+
+        CacheStats before = statementRegistry.getCacheStats();
+        User second = userStorage.addUser(new User(0, "second@mail.ru", "second", "second",
+                LocalDate.of(1990, 1, 1)));
+        CacheStats after = statementRegistry.getCacheStats();
+
+        assertSame(insert, statementRegistry.insert("users", "user_id"), "Вставка должна создаваться один раз");
+        assertEquals(2, second.getId(), "ID пользователя не соответствует");
+        assertEquals(before.getHits() + 1, after.getHits(), "Повторная вставка должна быть попаданием в реестр");
+        assertEquals(before.getMisses(), after.getMisses(), "Повторная вставка не должна компилироваться заново");
+    }
+
+    @Test
+    void shouldBuildStatementShapeOnce() {
+        String first = statementRegistry.statement("test.shape", () -> "SELECT " + 1);
+        String second = statementRegistry.statement("test.shape", () -> {
+            throw new AssertionError("Запрос уже собран");
+        });
+
+        assertSame(first, second, "Текст запроса формы должен собираться один раз");
+        assertTrue(statsService.getCacheStats().stream().anyMatch(stats -> stats.getName().equals("statements")),
+                "Статистика реестра должна попадать в общую статистику кэшей");
+    }
+}
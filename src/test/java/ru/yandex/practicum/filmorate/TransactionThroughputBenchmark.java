@@ -0,0 +1,136 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.storage.feed.FeedTimelines;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.review.ReviewStorage;
+import ru.yandex.practicum.filmorate.storage.search.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.transaction.UnitOfWork;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Нагрузочный тест параллельной записи в файловую БД H2. Не запускается в составе обычных тестов.
+ * Каждая операция добавляет друга и оценку отзыва (по три запроса на изменение). Сравниваются фиксация
+ * каждого запроса, транзакция на операцию и групповое фиксирование.
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:file:./target/transaction-benchmark")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class TransactionThroughputBenchmark {
+
+    private static final int THREADS = 16;
+    private static final int USERS = 2_000;
+    private static final int OPERATIONS_PER_THREAD = 1_000;
+
+    private final FilmService filmService;
+    private final UserStorage userStorage;
+    private final ReviewStorage reviewStorage;
+    private final FriendGraph friendGraph;
+    private final FeedTimelines feedTimelines;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmSearchIndex searchIndex;
+    private final FilmCache filmCache;
+    private final PlatformTransactionManager transactionManager;
+    private final JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void dropBenchmarkData() {
+        jdbcTemplate.update("DELETE FROM feed");
+        jdbcTemplate.update("DELETE FROM reviews");
+        jdbcTemplate.update("DELETE FROM films");
+        jdbcTemplate.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1");
+        jdbcTemplate.update("DELETE FROM users");
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1");
+        filmCache.clear();
+        popularityIndex.rebuild();
+        searchIndex.rebuild();
+        friendGraph.rebuild();
+        feedTimelines.clear();
+    }
+
+    @Test
+    void measureOperationsPerSecond() throws Exception {
+        List<User> users = new ArrayList<>();
+        for (int i = 1; i <= USERS; i++) {
+            users.add(new User(0, "user" + i + "@mail.ru", "user" + i, "name", LocalDate.of(1990, 1, 1)));
+        }
+        userStorage.addUsers(users);
+        Film film = filmService.addFilm(new Film(0, "film", "description", LocalDate.of(2000, 1, 1), 100,
+                new Mpa(1, null, null), new HashSet<>(), new HashSet<>(), 0));
+        List<Integer> reviewIds = new ArrayList<>();
+        for (int i = 1; i <= THREADS; i++) {
+            reviewIds.add(reviewStorage.addReview(new Review(0, film.getId(), i, "review", true, 0)).getReviewId());
+        }
+
+        measure("фиксация каждого запроса", reviewIds, Runnable::run);
+        measure("транзакция на операцию", reviewIds, new UnitOfWork(transactionManager, false, 64)::run);
+        measure("групповое фиксирование", reviewIds, new UnitOfWork(transactionManager, true, 64)::run);
+    }
+
+    private void measure(String mode, List<Integer> reviewIds, Consumer<Runnable> unitOfWork) throws Exception {
+        jdbcTemplate.update("DELETE FROM user_friend");
+        jdbcTemplate.update("DELETE FROM review_likes");
+        jdbcTemplate.update("UPDATE reviews SET useful = 0");
+        jdbcTemplate.update("DELETE FROM feed");
+        friendGraph.rebuild();
+        feedTimelines.clear();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    int userId = 1 + thread;
+                    int reviewId = reviewIds.get(thread);
+                    for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                        int friendId = 1 + (thread + 1 + i) % USERS;
+                        int likerId = 1 + (thread * OPERATIONS_PER_THREAD + i) % USERS;
+                        unitOfWork.accept(() -> {
+                            userStorage.addFriend(userId, friendId);
+                            reviewStorage.likeReview(reviewId, likerId, true);
+                        });
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        long nanos = System.nanoTime() - start;
+        int operations = THREADS * OPERATIONS_PER_THREAD;
+        System.out.printf("Операций (%s): %d за %d мс (%.0f в секунду)%n", mode, operations, nanos / 1_000_000,
+                operations * 1e9 / nanos);
+
+        assertEquals(operations, jdbcTemplate.queryForObject("SELECT SUM(useful) FROM reviews", Integer.class),
+                "Полезность отзывов должна учитывать все оценки");
+    }
+}
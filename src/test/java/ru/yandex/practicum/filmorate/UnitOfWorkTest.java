@@ -0,0 +1,169 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.WriterStats;
+import ru.yandex.practicum.filmorate.storage.director.DirectorDBStorage;
+import ru.yandex.practicum.filmorate.storage.transaction.TransactionEvents;
+import ru.yandex.practicum.filmorate.storage.transaction.UnitOfWork;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class UnitOfWorkTest {
+
+    private static final int UNITS = 8;
+    private static final int FAILING_UNIT = 3;
+    private static final int GROUP_SIZE = 4;
+    private static final int CALLERS = 32;
+    private static final int OPERATIONS_PER_CALLER = 50;
+
+    private final PlatformTransactionManager transactionManager;
+    private final DirectorDBStorage directorStorage;
+    private final JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void dropUnitOfWorkTestDataBase() {
+        jdbcTemplate.update("DELETE FROM directors");
+        jdbcTemplate.update("ALTER TABLE directors ALTER COLUMN director_id RESTART WITH 1");
+        directorStorage.reloadCache();
+    }
+
+    @Test
+    void shouldCommitConcurrentUnitsInGroupAndRollBackOnlyFailedUnit() throws Exception {
+        UnitOfWork unitOfWork = new UnitOfWork(transactionManager, true, 64);
+        Set<Integer> afterCommit = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(UNITS);
+        try {
+            CountDownLatch firstStarted = new CountDownLatch(1);
+            List<Future<Integer>> results = new ArrayList<>();
+            results.add(executor.submit(() -> unitOfWork.execute(() -> {
+                firstStarted.countDown();
+                awaitQueueDepth(unitOfWork, UNITS - 1);
+                TransactionEvents.afterCommit(() -> afterCommit.add(0));
+                return insertDirector("director0");
+            })));
+            assertTrue(firstStarted.await(10, TimeUnit.SECONDS), "Первая операция не начата");
+            for (int i = 1; i < UNITS; i++) {
+                int unit = i;
+                results.add(executor.submit(() -> unitOfWork.execute(() -> {
+                    int inserted = insertDirector("director" + unit);
+                    TransactionEvents.afterCommit(() -> assertTrue(afterCommit.add(unit),
+                            "Действие после фиксации должно выполняться один раз"));
+                    if (unit == FAILING_UNIT) {
+                        throw new IllegalStateException("Ошибка операции " + unit);
+                    }
+                    return inserted;
+                })));
+            }
+            for (int i = 0; i < UNITS; i++) {
+                if (i == FAILING_UNIT) {
+                    Future<Integer> failed = results.get(i);
+                    Exception e = assertThrows(Exception.class, () -> failed.get(10, TimeUnit.SECONDS));
+                    assertTrue(e.getCause() instanceof IllegalStateException,
+                            "Ошибка операции должна возвращаться вызвавшему её потоку");
+                } else {
+                    assertEquals(1, results.get(i).get(10, TimeUnit.SECONDS), "Операция должна быть выполнена");
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<String> names = jdbcTemplate.queryForList("SELECT name FROM directors ORDER BY name", String.class);
+        assertEquals(UNITS - 1, names.size(), "Изменения успешных операций группы должны быть зафиксированы");
+        assertFalse(names.contains("director" + FAILING_UNIT), "Изменения ошибочной операции должны откатываться");
+        assertEquals(UNITS - 1, afterCommit.size(), "Действия после фиксации должны выполняться для успешных операций");
+        assertFalse(afterCommit.contains(FAILING_UNIT), "Действия откаченной операции не должны выполняться");
+
+        WriterStats stats = unitOfWork.getWriterStats();
+        assertEquals(UNITS - 1, stats.getWritten(), "Количество зафиксированных операций не соответствует");
+        assertEquals(1, stats.getFailed(), "Количество ошибочных операций не соответствует");
+        assertEquals(2, stats.getFlushes(), "Ожидающие операции должны фиксироваться одной транзакцией");
+    }
+
+    @Test
+    void shouldCompleteEveryUnitWhenCallersExceedGroupSize() throws Exception {
+        UnitOfWork unitOfWork = new UnitOfWork(transactionManager, true, GROUP_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                int caller = i;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < OPERATIONS_PER_CALLER; j++) {
+                        String name = "director" + caller + "-" + j;
+                        assertEquals(Boolean.TRUE, unitOfWork.execute(() -> insertDirector(name) == 1),
+                                "Каждый поток должен получить результат своей операции");
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int operations = CALLERS * OPERATIONS_PER_CALLER;
+        assertEquals(operations, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM directors", Integer.class),
+                "Изменения всех операций должны быть зафиксированы");
+        assertEquals(operations, unitOfWork.getWriterStats().getWritten(),
+                "Количество зафиксированных операций не соответствует");
+    }
+
+    @Test
+    void shouldJoinOuterTransaction() {
+        UnitOfWork unitOfWork = new UnitOfWork(transactionManager, true, 64);
+        TransactionTemplate outer = new TransactionTemplate(transactionManager);
+        Set<String> afterCommit = ConcurrentHashMap.newKeySet();
+        assertThrows(IllegalStateException.class, () -> outer.executeWithoutResult(status -> {
+            unitOfWork.run(() -> {
+                insertDirector("inner");
+                TransactionEvents.afterCommit(() -> afterCommit.add("inner"));
+            });
+            throw new IllegalStateException("Ошибка внешней транзакции");
+        }));
+
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM directors", Integer.class),
+                "Операция внутри транзакции должна откатываться вместе с ней");
+        assertTrue(afterCommit.isEmpty(), "Действия после фиксации не должны выполняться при откате");
+    }
+
+    private int insertDirector(String name) {
+        return jdbcTemplate.update("INSERT INTO directors (name) VALUES (?)", name);
+    }
+
+    private static void awaitQueueDepth(UnitOfWork unitOfWork, int depth) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (unitOfWork.getWriterStats().getQueueDepth() != depth) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Операции не поставлены в очередь");
+            }
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -8,20 +8,26 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.model.Feed;
 import ru.yandex.practicum.filmorate.model.OperationType;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.feed.FeedDBStorage;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
 import ru.yandex.practicum.filmorate.storage.user.UserDBStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
 @AutoConfigureTestDatabase
@@ -32,6 +38,8 @@ class UserDBStorageTest {
     private final UserDBStorage userStorage;
     @Autowired
     private final FeedDBStorage feedDBStorage;
+    private final FriendGraph friendGraph;
+    private final PlatformTransactionManager transactionManager;
     private final JdbcTemplate jdbcTemplate;
     User user;
     User friend;
@@ -54,6 +62,7 @@ class UserDBStorageTest {
         jdbcTemplate.update("DELETE FROM user_friend");
         jdbcTemplate.update("DELETE FROM users");
         jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1");
+        friendGraph.rebuild();
     }
 
     @Test
@@ -74,9 +83,26 @@ class UserDBStorageTest {
         assertEquals(1, userAfterUpdate.getId(), "После обновления ID должен оставаться неизменным");
     }
 
+    @Test
+    void shouldCheckUsersExistence() {
+        assertTrue(userStorage.exists(friendAfterCreate.getId()), "Пользователь должен существовать");
+        assertFalse(userStorage.exists(999), "Пользователь с неизвестным ID не должен существовать");
+        assertTrue(userStorage.existsAll(List.of(1, 2, 1)), "Все пользователи должны существовать");
+        assertFalse(userStorage.existsAll(List.of(1, 999)), "Неизвестный ID должен находиться в наборе");
+    }
+
+    @Test
+    void shouldCheckUsersAddedDirectlyToDataBase() {
+        jdbcTemplate.update("INSERT INTO users (user_id, email, login, name, birthday) VALUES (50, ?, ?, ?, ?)",
+                "direct@mail.ru", "direct", "direct", LocalDate.of(1990, 1, 1));
+
+        assertTrue(userStorage.exists(50), "Существование пользователя должно проверяться по БД");
+        assertTrue(userStorage.existsAll(List.of(1, 50)), "Набор пользователей должен проверяться по БД");
+    }
+
     @Test
     void shouldReturnAllUsers() {
-        List<User> allUsers = userStorage.getAllUsers();
+        List<User> allUsers = userStorage.getUsersPage(null, 1000);
 
         assertEquals(2, allUsers.size(),
                 "Количество друзей в БД не соответствует кол-ву созданных пользователей");
@@ -84,6 +110,25 @@ class UserDBStorageTest {
                 "Первый созданный пользователь должен соответствовать первому пользователю из списка");
     }
 
+    @Test
+    void shouldReturnUsersPageAfterCursor() {
+        assertEquals(List.of(userAfterCreate), userStorage.getUsersPage(null, 1),
+                "Первая страница должна начинаться с первого пользователя");
+        assertEquals(List.of(friendAfterCreate), userStorage.getUsersPage(userAfterCreate.getId(), 5),
+                "Следующая страница должна начинаться после последнего пользователя предыдущей");
+        assertEquals(List.of(), userStorage.getUsersPage(friendAfterCreate.getId(), 5),
+                "После последнего пользователя страница должна быть пустой");
+    }
+
+    @Test
+    void shouldStreamAllUsers() {
+        List<User> streamedUsers = new ArrayList<>();
+        userStorage.forEachUser(streamedUsers::add);
+
+        assertEquals(List.of(userAfterCreate, friendAfterCreate), streamedUsers,
+                "Потоковая выгрузка должна вернуть всех пользователей в порядке ID");
+    }
+
     @Test
     void shouldReturnUser() {
         Optional<User> userOptional = userStorage.getUser(1);
@@ -159,10 +204,111 @@ class UserDBStorageTest {
                 "Пользователь в списке общих друзей не соответствует");
     }
 
+    @Test
+    void shouldKeepFriendGraphInSyncWithFriendships() {
+        userStorage.addUser(new User(0, "thirdEmail", "thirdLogin", "thirdName", LocalDate.of(1950, 3, 5)));
+        userStorage.addFriend(1, 3);
+        userStorage.addFriend(1, 2);
+        userStorage.addFriend(3, 2);
+
+        assertArrayEquals(new int[]{2, 3}, friendGraph.getFriendIds(1), "Друзья должны быть отсортированы по ID");
+        assertArrayEquals(new int[]{1, 3}, friendGraph.getFollowerIds(2),
+                "Входящие связи должны обновляться вместе с исходящими");
+        assertArrayEquals(new int[]{2}, friendGraph.getCommonFriendIds(1, 3), "Общие друзья не соответствуют");
+
+        userStorage.deleteFriend(1, 2);
+        userStorage.deleteUserById(3);
+        assertArrayEquals(new int[0], friendGraph.getFriendIds(1),
+                "Удалённые друзья и пользователи не должны оставаться в графе");
+        assertArrayEquals(new int[0], friendGraph.getFollowerIds(2),
+                "Связи удалённого пользователя не должны оставаться в графе");
+        assertFalse(userStorage.exists(3), "Удалённый пользователь не должен существовать");
+
+        friendGraph.rebuild();
+        assertArrayEquals(new int[0], friendGraph.getFollowerIds(2),
+                "После перестроения из БД связи не должны измениться");
+    }
+
+    @Test
+    void shouldNotChangeFriendGraphWhenTransactionRollsBack() {
+        userStorage.addFriend(1, 2);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        assertThrows(IllegalStateException.class, () -> transaction.executeWithoutResult(status -> {
+            userStorage.addUser(new User(0, "thirdEmail", "thirdLogin", "thirdName", LocalDate.of(1950, 3, 5)));
+            userStorage.addFriend(2, 1);
+            userStorage.deleteFriend(1, 2);
+            userStorage.deleteUserById(2);
+            assertArrayEquals(new int[]{2}, friendGraph.getFriendIds(1),
+                    "Граф не должен меняться до фиксации транзакции");
+            throw new IllegalStateException("Ошибка транзакции");
+        }));
+
+        assertFalse(userStorage.exists(3), "Откаченный пользователь не должен существовать");
+        assertTrue(userStorage.exists(2), "Откаченное удаление не должно удалять пользователя");
+        assertArrayEquals(new int[]{1}, friendGraph.getFollowerIds(2),
+                "Откаченное удаление не должно убирать связи пользователя из графа");
+        assertArrayEquals(new int[]{2}, friendGraph.getFriendIds(1), "Откаченное удаление друга не должно менять граф");
+        assertArrayEquals(new int[0], friendGraph.getFriendIds(2), "Откаченная связь не должна попадать в граф");
+    }
+
+    @Test
+    void shouldSuggestFriendsOfFriendsByMutualFriends() {
+        for (int i = 3; i <= 5; i++) {
+            userStorage.addUser(new User(0, "email" + i, "login" + i, "name" + i, LocalDate.of(1950, 3, i)));
+        }
+        userStorage.addFriend(1, 2);
+        userStorage.addFriend(1, 3);
+        userStorage.addFriend(2, 1);
+        userStorage.addFriend(2, 3);
+        userStorage.addFriend(2, 4);
+        userStorage.addFriend(3, 4);
+        userStorage.addFriend(3, 5);
+
+        assertEquals(List.of(4, 5), friendGraph.getFriendSuggestionIds(1, 10),
+                "Друзья друзей должны быть упорядочены по количеству общих друзей без себя и уже добавленных");
+        assertEquals(List.of(4), friendGraph.getFriendSuggestionIds(1, 1),
+                "Количество рекомендаций должно ограничиваться параметром limit");
+        assertEquals(List.of(), friendGraph.getFriendSuggestionIds(5, 10),
+                "Пользователю без друзей некого рекомендовать");
+    }
+
+    @Test
+    void shouldSuggestFriendsForUsersWithManyFriends() {
+        int userId = 10000;
+        Map<Integer, Integer> mutualFriends = new HashMap<>();
+        for (int friendId = 10001; friendId <= 12500; friendId++) {
+            friendGraph.addFriend(userId, friendId);
+            int candidateId = 20000 + friendId % 7;
+            friendGraph.addFriend(friendId, candidateId);
+            friendGraph.addFriend(friendId, userId);
+            mutualFriends.merge(candidateId, 1, Integer::sum);
+        }
+        List<Integer> expected = mutualFriends.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+
+        assertEquals(expected, friendGraph.getFriendSuggestionIds(userId, 10),
+                "Параллельный обход должен давать тот же порядок рекомендаций");
+        assertEquals(expected.subList(0, 3), friendGraph.getFriendSuggestionIds(userId, 3),
+                "Запомненные рекомендации должны ограничиваться параметром limit");
+
+        friendGraph.addFriend(userId, expected.get(0));
+        assertEquals(expected.subList(1, expected.size()), friendGraph.getFriendSuggestionIds(userId, 10),
+                "После изменения графа запомненные рекомендации должны пересчитываться");
+    }
+
+    @Test
+    void shouldLoadUsersByIdsInRequestedOrder() {
+        assertEquals(List.of(friendAfterCreate, userAfterCreate), userStorage.getUsersByIds(List.of(2, 999, 1)),
+                "Пользователи должны возвращаться в порядке запрошенных ID без несуществующих");
+    }
+
     @Test
     void shouldAddFeedAddFriend() {
         userStorage.addFriend(1, 2);
-        List<Feed> feddList = feedDBStorage.getFeedsList(1);
+        List<Feed> feddList = feedDBStorage.getFeedPage(1, null, 1000);
         Feed feedUser = feddList.get(0);
         assertEquals(feedUser.getEventType(), EventType.FRIEND);
         assertEquals(feedUser.getOperation(), OperationType.ADD);
@@ -172,9 +318,25 @@ class UserDBStorageTest {
     void shouldAddFeedRemoveFriend() {
         userStorage.addFriend(1, 2);
         userStorage.deleteFriend(1, 2);
-        List<Feed> feddList = feedDBStorage.getFeedsList(1);
+        List<Feed> feddList = feedDBStorage.getFeedPage(1, null, 1000);
         Feed feedUser = feddList.get(1);
         assertEquals(feedUser.getEventType(), EventType.FRIEND);
         assertEquals(feedUser.getOperation(), OperationType.REMOVE);
     }
+
+    @Test
+    void shouldPageFeedByEventId() {
+        userStorage.addFriend(1, 2);
+        userStorage.deleteFriend(1, 2);
+        userStorage.addFriend(2, 1);
+        List<Feed> fullFeed = feedDBStorage.getFeedPage(1, null, 1000);
+        assertEquals(2, fullFeed.size(), "В ленте должны быть только события пользователя");
+
+        List<Feed> firstPage = feedDBStorage.getFeedPage(1, null, 1);
+        assertEquals(List.of(fullFeed.get(0)), firstPage, "Первая страница ленты не соответствует");
+        assertEquals(List.of(fullFeed.get(1)), feedDBStorage.getFeedPage(1, firstPage.get(0).getEventId(), 5),
+                "Страница должна начинаться после указанного события");
+        assertEquals(List.of(), feedDBStorage.getFeedPage(1, fullFeed.get(1).getEventId(), 5),
+                "После последнего события лента должна быть пустой");
+    }
 }
@@ -0,0 +1,96 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.controller.UserController;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.feed.FeedTimelines;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Нагрузочный тест загрузки пользователей и связей дружбы в файловую БД H2. Не запускается в составе
+ * обычных тестов. Для сравнения часть данных добавляется по одному через {@link UserService}.
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:file:./target/user-import-benchmark")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class UserImportBenchmark {
+
+    private static final int IMPORT_USERS = 100_000;
+    private static final int IMPORT_FRIENDS_PER_USER = 5;
+    private static final int SINGLE_USERS = 2_000;
+    private static final int SINGLE_FRIENDS_PER_USER = 5;
+
+    private final UserController userController;
+    private final UserService userService;
+    private final FriendGraph friendGraph;
+    private final FeedTimelines feedTimelines;
+    private final JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void dropBenchmarkData() {
+        jdbcTemplate.update("DELETE FROM feed");
+        jdbcTemplate.update("DELETE FROM user_friend");
+        jdbcTemplate.update("DELETE FROM users");
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1");
+        friendGraph.rebuild();
+        feedTimelines.clear();
+    }
+
+    @Test
+    void measureRecordsPerSecond() throws Exception {
+        Random random = new Random(1);
+        long start = System.nanoTime();
+        for (int i = 1; i <= SINGLE_USERS; i++) {
+            userService.addUser(new User(0, "single" + i + "@mail.ru", "single" + i, "name",
+                    LocalDate.of(1990, 1, 1)));
+        }
+        for (int i = 1; i <= SINGLE_USERS; i++) {
+            for (int j = 0; j < SINGLE_FRIENDS_PER_USER; j++) {
+                int friendId = 1 + random.nextInt(SINGLE_USERS);
+                if (friendId != i && !friendGraph.isFriend(i, friendId)) {
+                    userService.addFriend(i, friendId);
+                }
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        int singleRecords = SINGLE_USERS * (1 + SINGLE_FRIENDS_PER_USER);
+        System.out.printf("Пакет по одному: %d записей за %d мс (%.0f в секунду)%n", singleRecords,
+                nanos / 1_000_000, singleRecords * 1e9 / nanos);
+
+        StringBuilder body = new StringBuilder();
+        for (int i = 1; i <= IMPORT_USERS; i++) {
+            body.append("{\"id\":").append(i).append(",\"email\":\"user").append(i)
+                    .append("@mail.ru\",\"login\":\"user").append(i).append("\",\"birthday\":\"1990-01-01\"}\n");
+        }
+        for (int i = 1; i <= IMPORT_USERS; i++) {
+            for (int j = 0; j < IMPORT_FRIENDS_PER_USER; j++) {
+                body.append("{\"userId\":").append(i).append(",\"friendId\":")
+                        .append(1 + random.nextInt(IMPORT_USERS)).append("}\n");
+            }
+        }
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        ImportReport report = userController.importUsers(new ByteArrayInputStream(bytes),
+                MediaType.APPLICATION_NDJSON, false);
+        System.out.printf("Пакет загрузкой: %d записей за %d мс (%d в секунду)%n", report.getRecords(),
+                report.getElapsedMs(), report.getRecordsPerSecond());
+
+        assertEquals(IMPORT_USERS, report.getUsers(), "Все пользователи должны быть добавлены");
+        assertEquals(0, report.getRejected(), "Ошибок быть не должно");
+    }
+}
@@ -0,0 +1,142 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.controller.UserController;
+import ru.yandex.practicum.filmorate.model.BatchError;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.feed.FeedTimelines;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class UserImportTest {
+
+    private final UserController userController;
+    private final UserService userService;
+    private final FriendGraph friendGraph;
+    private final FeedTimelines feedTimelines;
+    private final JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void createImportTestEnvironment() {
+        friendGraph.rebuild();
+        feedTimelines.clear();
+        userService.addUser(new User(0, "existing@mail.ru", "existing", "existing", LocalDate.of(1990, 1, 1)));
+    }
+
+    @AfterEach
+    void dropImportTestDataBase() {
+        jdbcTemplate.update("DELETE FROM feed");
+        jdbcTemplate.update("DELETE FROM user_friend");
+        jdbcTemplate.update("DELETE FROM users");
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1");
+        friendGraph.rebuild();
+        feedTimelines.clear();
+    }
+
+    @Test
+    void shouldImportUsersAndMapFriendshipIds() throws IOException {
+        ImportReport report = userController.importUsers(body(
+                user(100, "first@mail.ru", "first") + "\n" +
+                user(200, "second@mail.ru", "second") + "\n" +
+                user(300, "first@mail.ru", "duplicate") + "\n" +
+                user(400, "not an email", "invalid") + "\n" +
+                "{\"userId\":100,\"friendId\":200}\n" +
+                "{\"userId\":200,\"friendId\":100}\n" +
+                "{\"userId\":100,\"friendId\":300}\n" +
+                "{\"userId\":100,\"friendId\":1}\n" +
+                "{\"userId\":100,\"friendId\":999}\n"), MediaType.APPLICATION_NDJSON, false);
+
+        assertEquals(9, report.getRecords(), "Количество записей не соответствует");
+        assertEquals(2, report.getUsers(), "Количество добавленных пользователей не соответствует");
+        assertEquals(3, report.getFriendships(), "Количество добавленных связей не соответствует");
+        assertEquals(List.of(2, 3, 6, 8), report.getErrors().stream().map(BatchError::getIndex)
+                .collect(Collectors.toList()), "Ошибки должны указывать на индексы записей");
+
+        int firstId = userId("first");
+        int secondId = userId("second");
+        assertEquals(List.of("existing", "second"), userService.getFriendsList(firstId).stream()
+                        .map(User::getLogin).sorted().collect(Collectors.toList()),
+                "Связи должны ссылаться на ID, выданные при загрузке");
+        assertTrue(friendGraph.isFriend(secondId, firstId), "Граф дружбы должен обновляться при загрузке");
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM feed", Integer.class),
+                "События ленты не должны создаваться без параметра feed");
+    }
+
+    @Test
+    void shouldImportCsvWithFeedEvents() throws IOException {
+        ImportReport users = userController.importUsers(body("id,email,login,name,birthday\n" +
+                "1,first@mail.ru,first,\"Last, First\",1990-01-01\n" +
+                "2,second@mail.ru,second,,1991-02-02\n" +
+                "3,broken@mail.ru,broken\n"), MediaType.parseMediaType("text/csv"), false);
+        assertEquals(2, users.getUsers(), "Количество добавленных пользователей не соответствует");
+        assertEquals(2, users.getErrors().get(0).getIndex(), "Ошибка должна указывать на строку с нехваткой полей");
+        assertEquals("Last, First", userService.getUser(2).getName(), "Значение в кавычках не соответствует");
+        assertEquals("second", userService.getUser(3).getName(), "Пустое имя должно заменяться логином");
+
+        ImportReport friendships = userController.importUsers(body("userId,friendId\n2,3\n3,1\n"),
+                MediaType.parseMediaType("text/csv"), true);
+        assertEquals(2, friendships.getFriendships(), "Количество добавленных связей не соответствует");
+        assertEquals(1, userService.getFeedPage(2, null, 10).size(), "Должно создаваться событие ленты");
+        assertEquals(List.of(3), userService.getTimeline(2, null, 10).stream().map(feed -> feed.getUserId())
+                .collect(Collectors.toList()), "Событие должно попадать в ленты друзей");
+    }
+
+    @Test
+    void shouldCheckExistingFriendshipUsersWithOneStatementPerChunk() throws IOException {
+        for (int i = 2; i <= 5; i++) {
+            userService.addUser(new User(0, "user" + i + "@mail.ru", "user" + i, "user" + i,
+                    LocalDate.of(1990, 1, i)));
+        }
+        jdbcTemplate.execute("SET QUERY_STATISTICS FALSE");
+        jdbcTemplate.execute("SET QUERY_STATISTICS TRUE");
+        ImportReport report = userController.importUsers(body("userId,friendId\n1,2\n2,3\n3,4\n4,5\n5,1\n"),
+                MediaType.parseMediaType("text/csv"), false);
+        Map<String, Integer> statements = new HashMap<>();
+        jdbcTemplate.query("SELECT sql_statement, execution_count FROM information_schema.query_statistics", rs -> {
+            statements.put(rs.getString("sql_statement"), rs.getInt("execution_count"));
+        });
+        jdbcTemplate.execute("SET QUERY_STATISTICS FALSE");
+
+        assertEquals(5, report.getFriendships(), "Количество добавленных связей не соответствует");
+        assertEquals(1, statements.entrySet().stream()
+                        .filter(statement -> statement.getKey().contains("FROM users WHERE user_id"))
+                        .mapToInt(Map.Entry::getValue).sum(),
+                "Пользователи связей части должны проверяться одним запросом");
+    }
+
+    private int userId(String login) {
+        return jdbcTemplate.queryForObject("SELECT user_id FROM users WHERE login = ?", Integer.class, login);
+    }
+
+    private static String user(int id, String email, String login) {
+        return "{\"id\":" + id + ",\"email\":\"" + email + "\",\"login\":\"" + login + "\",\"name\":\"" + login +
+                "\",\"birthday\":\"1990-01-01\"}";
+    }
+
+    private static ByteArrayInputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}